@@ -12,22 +12,19 @@ and a ObjectInGrid, so it can be placed and move in that world.
 
 import java.awt.Color;
 import java.awt.Point;
-import java.util.Vector;
-import java.util.ArrayList;
 import java.awt.BasicStroke;
 
 import uchicago.src.sim.gui.Drawable;
 import uchicago.src.sim.gui.SimGraphics;
-import uchicago.src.sim.space.Diffuse2D;
 import uchicago.src.sim.gui.ColorMap;
 
 
 public class Ant implements ObjectInGrid, Drawable {
 	// "class" variables -- one value for all instances 
     public  static int          	nextId = 0; // to give each an id
-	public  static TorusWorld    	world;  	// where the agents live
+	public  static TorusSpace    	world;  	// where the agents live
 	public  static Model		   	model;      // the model "in charge"
-	public  static Diffuse2D		pSpace;	    // where the pheromone is stored
+	public  static PheromoneSpace	pSpace;	    // where the pheromone is stored
 	public  static GUIModel		    guiModel = null;   // the gui model "in charge"
     // we'll use this to draw a border around the bugs' cells (the f means float)
     public  static BasicStroke      bugEdgeStroke = new BasicStroke( 1.0f );
@@ -37,6 +34,9 @@ public class Ant implements ObjectInGrid, Drawable {
 	public static int randomMoveMethod = 0;
 	public static double maxDistanceToCenter;
 
+	// scratch space for ties in findMostPheromoneOpenNeighbor, so no garbage
+	protected static int[] tieBuffer = new int[9];
+
 	// we use this to have Ant shades indicated their probRandMove
 	public static ColorMap		 probRandMoveColorMap;
 	public static final int      colorMapSize = 64;
@@ -52,6 +52,10 @@ public class Ant implements ObjectInGrid, Drawable {
 	public  double		probDieCenter; // probability it'll die at center
 	public Color		myColor;    // color of this agent
 
+	// for a view of an ArrayAntPopulation ant (else null): setters copy into it
+	protected ArrayAntPopulation population;
+	protected int		index;		// which ant of population this shows
+
 	// an Ant constructor
 	// note it assigns ID values in sequence as ant's are created.
 	public Ant ( ) {
@@ -73,6 +77,35 @@ public class Ant implements ObjectInGrid, Drawable {
 		setInitialColor();
 	}
 
+	// a view of ant i of an ArrayAntPopulation, or (p null) a blank Ant
+	// for it to load ants into.  NB: no new id.
+	protected Ant ( ArrayAntPopulation p, int i ) {
+		population = p;
+		index = i;
+		live = true;
+		setInitialColor();
+		if ( p != null ) {
+			p.loadInto( this, i );
+			if ( guiModel != null )
+				setBugColorFromPRM();
+		}
+	}
+
+	/**
+	 * reset
+	 * make this a new ant again, as Ant() does (next id and all),
+	 * so AntPopulations can reuse dead Ants for new ones (see AntPopulation.newAnt).
+	 */
+	public void reset () {
+		id = nextId++;
+		x = 0;		y = 0;
+		weight = 0.0; age = 0;
+		live = true;
+		probRandMove = 0.0;
+		probDieCenter = 0.0;
+		setInitialColor();
+	}
+
 	public void setInitialColor () {  // set agents initial color
 		myColor = Color.blue;
 	}
@@ -83,14 +116,14 @@ public class Ant implements ObjectInGrid, Drawable {
 	//
 	public int getId() {  return id; }
 	public int getX() { return x; }
-	public void setX( int i ) { x = i; }
+	public void setX( int i ) { x = i; copyToPopulation(); }
 	public int getY() { return y; }
-	public void setY( int i ) { y = i; }
+	public void setY( int i ) { y = i; copyToPopulation(); }
 
 	public double getWeight() { return weight; }
-	public void setWeight( double w ) { weight = w; }
+	public void setWeight( double w ) { weight = w; copyToPopulation(); }
 	public int getAge() { return age; }
-	public void setAge( int a ) { age = a; }
+	public void setAge( int a ) { age = a; copyToPopulation(); }
 	public boolean getLive() { return live; }
 	public void setLive( boolean l ) { live = l; }
 
@@ -105,6 +138,7 @@ public class Ant implements ObjectInGrid, Drawable {
 			if ( guiModel != null ) {
 				setBugColorFromPRM();
 			}
+			copyToPopulation();
 		}
 	}
 	public double getProbDieCenter() {
@@ -113,6 +147,13 @@ public class Ant implements ObjectInGrid, Drawable {
 
 	public void setProbDieCenter(double probDieCenter) {
 		this.probDieCenter = probDieCenter;
+		copyToPopulation();
+	}
+
+	// if we are a view of an ArrayAntPopulation ant, set its fields to ours
+	protected void copyToPopulation () {
+		if ( population != null )
+			population.copyFrom( this, index );
 	}
 
 	/**
@@ -153,10 +194,10 @@ public class Ant implements ObjectInGrid, Drawable {
 	
 	
 	// note these are class (static) methods, to set class (static) variables
-	public static void setWorld( TorusWorld w ) {	world = w; }
+	public static void setWorld( TorusSpace w ) {	world = w; }
 	public static void setModel( Model m ) { model = m; }
 	public static void resetNextId() { nextId = 0; }  // call when we reset the model
-	public static void setPSpace( Diffuse2D space ) {
+	public static void setPSpace( PheromoneSpace space ) {
 		pSpace = space;
 	}
 	/**
@@ -186,10 +227,9 @@ public class Ant implements ObjectInGrid, Drawable {
 	}
 
 	// return the number of neighbors the bug has, at distance d
-	@SuppressWarnings("unchecked")
+	// (the model keeps counts for d=1,2 up to date, so no search needed)
 	public int getNumberOfNeighbors( int d ) {
-		Vector<Object> nbors = (Vector<Object>)world.getMooreNeighbors( x, y, d, d, false );
-		return nbors.size();
+		return model.getNumberOfNeighbors( x, y, d );
 	}
 
 	/**
@@ -216,9 +256,10 @@ public class Ant implements ObjectInGrid, Drawable {
 		
 		// see if we move randomly...
 		if ( probRandMove > Model.getUniformDoubleFromTo( 0.0, 1.0 ) ) {
-			Point pt = findRandomOpenNeighborCell ( );
-            if ( pt != null ) { 
-                moved = world.moveObjectTo( this, (int) pt.getX(), (int) pt.getY() );
+			int k = pickRandomOpenNeighbor ( );
+            if ( k >= 0 ) { 
+                moved = world.moveObject( this, MooreNeighborhood.MASK_DX[k],
+										  MooreNeighborhood.MASK_DY[k] );
 				if ( moved && model.getRDebug() > 1 ) 
 					System.out.printf("     -- moved to random cell %d,%d.\n",x,y);
 			}
@@ -261,11 +302,18 @@ public class Ant implements ObjectInGrid, Drawable {
 	public boolean tryMoveToMorePheromone ( int radius ) {
 		boolean moved = false;
 		// try to move to cell with more pheromone
-		Point pt =  findMostPheromoneOpenNeighborCell ( radius );
-		if ( pt != null ) {  // we got one!
-			int newX = (int) pt.getX();
-			int newY = (int) pt.getY();
-			if ( pSpace.getValueAt( x, y ) < pSpace.getValueAt( newX, newY ) ) {
+		MooreNeighborhood nbhd = MooreNeighborhood.get( world.getSizeX(),
+										world.getSizeY(), radius, true );
+		int k = findMostPheromoneOpenNeighbor ( nbhd );
+		if ( k >= 0 ) {  // we got one!
+			// NB: newX,newY are not torus normalized (as always),
+			//     so moveObjectTo refuses moves across the edges.
+			int newX = x + nbhd.dx[k];
+			int newY = y + nbhd.dy[k];
+			double p = ( radius <= pSpace.getHalo() )	// read through the halo
+				? pSpace.getValueAt( newX, newY )
+				: pSpace.getValueAt( world.xnorm( newX ), world.ynorm( newY ) );
+			if ( pSpace.getValueAt( x, y ) < p ) {
 				moved = world.moveObjectTo( this, newX, newY );
 				if ( moved &&  model.getRDebug() > 1 )
 					System.out.printf("     -- moved to better cell at %d,%d.\n",
@@ -284,21 +332,32 @@ public class Ant implements ObjectInGrid, Drawable {
 	// NOTE how it picks depends on randomMoveMethod:
 	// 0 - pick at random from open neighbors
 	// 1 - pick the first found of the  open neighbors (biased!)
+	// NB: the ant's own cell is never picked (it is in it!)
 	*/
 	public Point findRandomOpenNeighborCell () {
-		Point 		openP = null;
-		ArrayList<Point> openPts = world.getOpenNeighborLocations( x, y );
-
-		// now pick a random open point, if any to pick from
-		if ( openPts.size() > 0 ) {
-			if ( randomMoveMethod == 0 ) {
-				openP = openPts.get( Model.getUniformIntFromTo( 0, openPts.size()-1 ) );
-			}
-			else   // randomMoveMethod = 1 is a biased way to do it!
-				openP = openPts.get( 0 );
-		}
+		int k = pickRandomOpenNeighbor();
+		if ( k < 0 )
+			return null;
+		return new Point( world.xnorm( x + MooreNeighborhood.MASK_DX[k] ),
+						  world.ynorm( y + MooreNeighborhood.MASK_DY[k] ) );
+	}
 
-		return openP;
+	/**
+	// pickRandomOpenNeighbor
+	// as findRandomOpenNeighborCell, but with no garbage:
+	// get the world's open neighbor mask, and pick one of the set bits.
+	// Return k, where the cell is at dx,dy = MooreNeighborhood.MASK_DX[k],MASK_DY[k],
+	// or -1 if no open cell found.
+	*/
+	public int pickRandomOpenNeighbor () {
+		int mask = world.getOpenNeighborMask( x, y );
+		if ( mask == 0 )
+			return -1;
+		if ( randomMoveMethod == 0 )
+			return MooreNeighborhood.nthSetBit( mask,
+						Model.getUniformIntFromTo( 0, Integer.bitCount( mask ) - 1 ) );
+		else   // randomMoveMethod = 1 is a biased way to do it!
+			return Integer.numberOfTrailingZeros( mask );
 	}
 	
 
@@ -309,53 +368,88 @@ public class Ant implements ObjectInGrid, Drawable {
 	// Return null if no open cell found.
 	// NB: This assumes world is a TorusWorld, so we normalize x,y values.
 	// NB: pick from ties at random
+	// NB: the cells are scanned x outer, y inner, using precomputed
+	//     offsets; we only normalize if x,y is within d of an edge.
+	// NB: the Point is not torus normalized!
 	*/
 	
 	public Point findMostPheromoneOpenNeighborCell ( int d ) {
-		ArrayList<Point> openPts = new ArrayList<Point>();  // list of open points
-		int minx = x - d;
-		int maxx = x + d;
-		int miny = y - d;
-		int maxy = y + d;
+		MooreNeighborhood nbhd = MooreNeighborhood.get( world.getSizeX(),
+										world.getSizeY(), d, true );
+		int k = findMostPheromoneOpenNeighbor( nbhd );
+		if ( k < 0 )
+			return null;
+		return new Point( x + nbhd.dx[k], y + nbhd.dy[k] );
+	}	
+
+	/**
+	// findMostPheromoneOpenNeighbor
+	// as findMostPheromoneOpenNeighborCell, but with no garbage:
+	// returns k, the index in nbhd of the open cell with the most pheromone
+	// (ties picked at random), or -1 if no open cell found.
+	// Ties are kept in the (shared) tieBuffer.
+	*/
+	public int findMostPheromoneOpenNeighbor ( MooreNeighborhood nbhd ) {
+		if ( tieBuffer.length < nbhd.size )
+			tieBuffer = new int[ nbhd.size ];
+		int[] ties = tieBuffer;
+		int numTies = 0;
+		boolean interior = nbhd.isInterior( x, y );
+		// the pSpace can be read without wrapping (through its halo, if need be)?
+		boolean unwrapped = interior || nbhd.radius <= pSpace.getHalo();
 
 		// look at neighbor cells, get a list of those with the most Pher.
 		// (the list could be just 1 cell of course.)
+		// If we can read the pheromone unwrapped, we look at it first,
+		// and only wrap the cells that could be best to ask if they are open
+		// (the same cells pass both tests either way).
 		double mostP = -1;  // most P seen so far;  anything is better than -1!
-		for ( int tx = minx; tx <= maxx; ++tx ) {
-			int txnorm = world.xnorm( tx );
-			for ( int ty = miny; ty <= maxy; ++ty ) {
-				int tynorm = world.ynorm( ty );
-				if ( world.getObjectAt( txnorm, tynorm ) == null ) { // its open 
-					double p = pSpace.getValueAt( txnorm, tynorm );
-					if ( p >= mostP ) { 		// best or better than best so far
-						if ( p > mostP ) { 		// new best!
-							openPts.clear();  	// get rid of any previous best
-							mostP = p;          // set to new best value
-						}
-						openPts.add( new Point( tx, ty ) );   // add to list
-					}
+		for ( int k = 0; k < nbhd.size; ++k ) {
+			int txnorm, tynorm;
+			double p;
+			if ( unwrapped ) {
+				p = pSpace.getValueAt( x + nbhd.dx[k], y + nbhd.dy[k] );
+				if ( p < mostP )
+					continue;
+				txnorm = interior ? x + nbhd.dx[k] : nbhd.wrapX( x, k );
+				tynorm = interior ? y + nbhd.dy[k] : nbhd.wrapY( y, k );
+				if ( !world.isOpen( txnorm, tynorm ) )
+					continue;
+			}
+			else {
+				txnorm = nbhd.wrapX( x, k );
+				tynorm = nbhd.wrapY( y, k );
+				if ( !world.isOpen( txnorm, tynorm ) )
+					continue;
+				p = pSpace.getValueAt( txnorm, tynorm );
+			}
+			// its open 
+			if ( p >= mostP ) { 		// best or better than best so far
+				if ( p > mostP ) { 		// new best!
+					numTies = 0;	  	// get rid of any previous best
+					mostP = p;          // set to new best value
 				}
+				ties[ numTies++ ] = k;   // add to list
 			}
 		}
 
 		// now pick a random open best point, if any to pick from
-		int    numOpenPts = openPts.size();
-		Point  openP = null;  				// the one we return
-		if ( numOpenPts == 1 )				// only one to pick!
-			openP = openPts.get( 0 );
-		else if ( numOpenPts > 1 )      	// pick one at random
-			openP = openPts.get( Model.getUniformIntFromTo( 0, numOpenPts-1 ) );
+		int    best = -1;  				// the one we return
+		if ( numTies == 1 )				// only one to pick!
+			best = ties[0];
+		else if ( numTies > 1 )      	// pick one at random
+			best = ties[ Model.getUniformIntFromTo( 0, numTies-1 ) ];
 
 		if ( model.getRDebug() > 2 ) {
-			if ( openP == null ) 
+			if ( best < 0 ) 
 				System.out.printf( "     -> no open neighbor with more pheromone.\n" );
 			else
-				System.out.printf( "     -> new best@%.0f,%.0f (ph=%.3f vs here=%.3f)\n",
-		   			   openP.getX(), openP.getY(), mostP, pSpace.getValueAt( x, y ) );
+				System.out.printf( "     -> new best@%d,%d (ph=%.3f vs here=%.3f)\n",
+		   			   x + nbhd.dx[best], y + nbhd.dy[best], mostP, pSpace.getValueAt( x, y ) );
 		}
 
-		return openP;
-	}	
+		return best;
+	}
 	
 	/**
 	// makeRandomMove
@@ -400,6 +494,7 @@ public class Ant implements ObjectInGrid, Drawable {
 	*/
 	public int incrementAge ( int incAge ) {
 		age = age + incAge;   		
+		copyToPopulation();
 		return age;
 	}
 
@@ -0,0 +1,336 @@
+package  AntPheromones;
+
+/**
+AntIntents
+
+The Model's parallelActivationOrder: all the ants take their step at
+once, in two phases, so the first can be split over several threads
+(setNumThreads) and still give the same run with any number of them.
+
+1. Each ant decides what it will do, by the same rules as Ant.step():
+   die, or which cell to move to (or stay).  It only reads the world
+   and pSpace, so every ant sees them as they were at the start of the
+   step, and no ant's choice depends on another's, or on which thread
+   makes it.  Each ant has its own random numbers, from a stream
+   seeded by the run's seed, the step (the Model's tick count, so it
+   doesn't start over if the Model makes a new AntIntents mid-run) and
+   the ant's id -- not the Model's generator, which is neither thread
+   safe nor drawn from in a fixed order here.
+2. On this thread, the dead ants are removed, and each cell wanted by
+   more than one ant goes to the one with the lowest priority (the
+   first number of its stream; ties to the lower id), and the others
+   stay where they are.  The cells were all empty at the start of the
+   step, so the winners can all move, in any order.
+
+Since no ant sees the others move, and they draw different random
+numbers, runs are not the same as with the one-at-a-time orders.
+(ColoredTileStepper decides the same way, but lets the ants see
+each other move.)
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+public class AntIntents {
+
+	protected Model		model;
+	protected int		numThreads = 1;
+	protected ExecutorService pool;				// null if numThreads == 1
+	protected List<Callable<Object>> jobs;
+	protected Stream[]	streams;				// one per job
+	protected int[][]	tieBuffers;				// one per job
+
+	// for the step being taken
+	protected AntPopulation ants;
+	protected TorusSpace world;
+	protected PheromoneSpace pSpace;
+	protected MooreNeighborhood nbhd;
+	protected int		numAnts;
+	protected long		stepSeed;
+	protected boolean[]	dies;
+	protected boolean[]	moves;
+	protected int[]		targetX, targetY;		// where it moves, in the world, if moves[i]
+	protected long[]	priority;
+	protected int[]		claim;					// ant that gets each cell (y*xSize+x), or -1
+
+	public AntIntents ( Model m ) {
+		model = m;
+		streams = new Stream[] { new Stream() };
+		tieBuffers = new int[][] { new int[9] };
+	}
+
+	public int getNumThreads () { return numThreads; }
+
+	/**
+	 * setNumThreads
+	 * decide with n threads (n=1: just this thread, no pool).
+	 * Call setNumThreads(1) when done with it, to stop the threads.
+	 */
+	public void setNumThreads ( int n ) {
+		if ( pool != null ) {
+			pool.shutdown();
+			pool = null;
+			jobs = null;
+		}
+		numThreads = Math.max( 1, n );
+		streams = new Stream[ numThreads ];
+		tieBuffers = new int[ numThreads ][ 9 ];
+		for ( int j = 0; j < numThreads; ++j )
+			streams[j] = new Stream();
+		if ( numThreads == 1 )
+			return;
+
+		pool = Executors.newFixedThreadPool( numThreads, new ThreadFactory() {
+				public Thread newThread ( Runnable r ) {
+					Thread t = new Thread( r, "AntIntents decide" );
+					t.setDaemon( true );	// don't keep the model from exiting
+					return t;
+				}
+			} );
+		jobs = new ArrayList<Callable<Object>>();
+		for ( int j = 0; j < numThreads; ++j ) {
+			final int job = j;
+			jobs.add( new Callable<Object>() {
+					public Object call () {
+						runJob( job );
+						return null;
+					}
+				} );
+		}
+	}
+
+	/**
+	 * step
+	 * activate all the ants in the Model's antPop, as above.
+	 * Dead ants are removed with model.removeAntFromModel (so just marked
+	 * dead in antPop, see AntPopulation.removeDead).
+	 */
+	public void step () {
+		beginStep();
+		runJobs();		// phase 1: decide
+
+		// phase 2: the dead leave, the rest claim their cells, the winners move
+		int xSize = world.getSizeX();
+		if ( claim == null || claim.length != xSize * world.getSizeY() ) {
+			claim = new int[ xSize * world.getSizeY() ];
+			java.util.Arrays.fill( claim, -1 );
+		}
+		for ( int i = 0; i < numAnts; ++i ) {
+			if ( dies[i] )
+				model.removeAntFromModel( i );
+			else if ( moves[i] ) {
+				int c = targetY[i] * xSize + targetX[i];
+				int j = claim[c];
+				if ( j < 0 || priority[i] < priority[j]
+					 || ( priority[i] == priority[j] && ants.getId( i ) < ants.getId( j ) ) )
+					claim[c] = i;
+			}
+		}
+		for ( int i = 0; i < numAnts; ++i ) {
+			if ( !moves[i] )
+				continue;
+			int c = targetY[i] * xSize + targetX[i];
+			if ( claim[c] != i )
+				continue;
+			claim[c] = -1;
+			world.moveObjectTo( ants.load( i ), targetX[i], targetY[i] );
+			ants.store( i );
+		}
+
+		endStep();
+	}
+
+	/**
+	 * beginStep
+	 * get the model's ants, world and pSpace, the seed for the step,
+	 * and make sure the arrays are big enough.
+	 */
+	protected void beginStep () {
+		ants = model.antPop;
+		world = model.world;
+		pSpace = model.pSpace;
+		nbhd = MooreNeighborhood.get( world.getSizeX(), world.getSizeY(), 1, true );
+		numAnts = ants.size();
+		stepSeed = Stream.mix( model.getSeed() ^ Stream.mix( (long) model.getTickCount() ) );
+		if ( dies == null || dies.length < numAnts ) {
+			int n = Math.max( 16, 2 * numAnts );
+			dies = new boolean[ n ];
+			moves = new boolean[ n ];
+			targetX = new int[ n ];
+			targetY = new int[ n ];
+			priority = new long[ n ];
+		}
+	}
+
+	protected void endStep () {
+		ants = null;
+		world = null;
+		pSpace = null;
+	}
+
+	/**
+	 * runJobs
+	 * runJob( j ) for each thread j, on the pool (or just runJob( 0 ) here).
+	 */
+	protected void runJobs () {
+		try {
+			if ( pool == null )
+				runJob( 0 );
+			else {
+				for ( Future<Object> f : pool.invokeAll( jobs ) )
+					f.get();	// throws if the job did
+			}
+		}
+		catch ( Exception e ) {
+			System.err.printf( "\n** %s: deciding failed: %s\n", getClass().getSimpleName(), e );
+			throw new RuntimeException( e );
+		}
+	}
+
+	// job's share of the ants
+	protected void runJob ( int job ) {
+		decideAll( (int) ( (long) numAnts * job / numThreads ),
+				   (int) ( (long) numAnts * ( job + 1 ) / numThreads ), job );
+	}
+
+	protected void decideAll ( int from, int to, int job ) {
+		Stream rng = streams[job];
+		int[] ties = tieBuffers[job];
+		for ( int i = from; i < to; ++i )
+			decide( i, rng, ties );
+	}
+
+	/**
+	 * decide
+	 * set dies[i], or moves[i] and targetX,Y[i], as Ant.step() would
+	 * (amIStillAlive, then a random move, or tryMoveToMorePheromone, and
+	 * makeRandomMove if that doesn't move it), but with rng.
+	 */
+	protected void decide ( int i, Stream rng, int[] ties ) {
+		rng.seed( Stream.mix( stepSeed + ants.getId( i ) * Stream.GAMMA ) );
+		priority[i] = rng.nextLong();
+		dies[i] = false;
+		moves[i] = false;
+		int x = ants.getX( i ), y = ants.getY( i );
+
+		double dx = x - model.pSourceX, dy = y - model.pSourceY;
+		double probDie = ants.getProbDieCenter( i )
+			* ( 1.0 - ( Math.sqrt( dx*dx + dy*dy ) / Ant.maxDistanceToCenter ) );
+		if ( probDie > rng.nextDouble() ) {
+			dies[i] = true;
+			return;
+		}
+
+		if ( ants.getProbRandMove( i ) > rng.nextDouble() ) {
+			int mask = getOpenNeighborMask( x, y );
+			if ( mask != 0 ) {
+				int k = ( Ant.randomMoveMethod == 0 )
+					? MooreNeighborhood.nthSetBit( mask, rng.nextInt( Integer.bitCount( mask ) ) )
+					: Integer.numberOfTrailingZeros( mask );
+				setTarget( i, world.xnorm( x + MooreNeighborhood.MASK_DX[k] ),
+						   world.ynorm( y + MooreNeighborhood.MASK_DY[k] ) );
+				return;
+			}
+		}
+		else {
+			int k = findMostPheromoneOpenNeighbor( x, y, rng, ties );
+			if ( k >= 0 ) {
+				// as moveObjectTo, no moves across the edges
+				int newX = x + nbhd.dx[k], newY = y + nbhd.dy[k];
+				if ( newX >= 0 && newY >= 0 && newX < world.getSizeX() && newY < world.getSizeY()
+					 && pSpace.getValueAt( x, y ) < pSpace.getValueAt( newX, newY ) ) {
+					setTarget( i, newX, newY );
+					return;
+				}
+			}
+		}
+
+		// makeRandomMove
+		int rx = 0, ry = 0;
+		while ( rx == 0 && ry == 0 ) {
+			rx = rng.nextInt( 3 ) - 1;
+			ry = rng.nextInt( 3 ) - 1;
+		}
+		int tx = world.xnorm( x + rx ), ty = world.ynorm( y + ry );
+		if ( isOpen( tx, ty ) )
+			setTarget( i, tx, ty );
+	}
+
+	// where decide() asks if cells are open (so a subclass can see moves not yet made)
+	protected boolean isOpen ( int x, int y ) {
+		return world.isOpen( x, y );
+	}
+
+	protected int getOpenNeighborMask ( int x, int y ) {
+		return world.getOpenNeighborMask( x, y );
+	}
+
+	protected void setTarget ( int i, int x, int y ) {
+		moves[i] = true;
+		targetX[i] = x;
+		targetY[i] = y;
+	}
+
+	// as Ant.findMostPheromoneOpenNeighbor (ties picked with rng)
+	protected int findMostPheromoneOpenNeighbor ( int x, int y, Stream rng, int[] ties ) {
+		int numTies = 0;
+		boolean interior = nbhd.isInterior( x, y );
+		double mostP = -1;
+		for ( int k = 0; k < nbhd.size; ++k ) {
+			int tx = interior ? x + nbhd.dx[k] : nbhd.wrapX( x, k );
+			int ty = interior ? y + nbhd.dy[k] : nbhd.wrapY( y, k );
+			if ( !isOpen( tx, ty ) )
+				continue;
+			double p = pSpace.getValueAt( tx, ty );
+			if ( p >= mostP ) {
+				if ( p > mostP ) {
+					numTies = 0;
+					mostP = p;
+				}
+				ties[ numTies++ ] = k;
+			}
+		}
+		if ( numTies == 0 )
+			return -1;
+		return ( numTies == 1 ) ? ties[0] : ties[ rng.nextInt( numTies ) ];
+	}
+
+	/**
+	 * Stream
+	 * a SplitMix64 generator: small, fast, and any seed gives a good stream,
+	 * so each ant can just have its own.
+	 */
+	protected static class Stream {
+		static final long GAMMA = 0x9e3779b97f4a7c15L;
+		long state;
+
+		void seed ( long s ) { state = s; }
+
+		long nextLong () {
+			state += GAMMA;
+			return mix( state );
+		}
+
+		// uniform in [0,1)
+		double nextDouble () {
+			return ( nextLong() >>> 11 ) * 0x1.0p-53;
+		}
+
+		// uniform in 0..n-1
+		int nextInt ( int n ) {
+			return (int) ( ( ( nextLong() >>> 33 ) * n ) >>> 31 );
+		}
+
+		static long mix ( long z ) {
+			z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+			z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+			return z ^ ( z >>> 31 );
+		}
+	}
+
+}
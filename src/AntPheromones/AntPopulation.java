@@ -0,0 +1,121 @@
+package  AntPheromones;
+
+/**
+* AntPopulation interface.
+*
+* Where the Model keeps its ants, so the step, stats and reporting
+* code don't depend on how they are stored:
+* * ListAntPopulation  -- an ArrayList of Ant objects (what the model has always used)
+* * ArrayAntPopulation -- structure of arrays, one column per Ant field,
+*                         Ant objects only made for the GUI and probes
+*
+* The ants are named by index, 0..size()-1.  remove(i) may move other
+* ants to other indexes (ArrayAntPopulation moves the last one into i),
+* so a loop that removes ant i as it goes must look at i again.
+* Ants that die during a step are just marked (markDead(i)) instead, so
+* no ant moves, and removeDead() takes them all out at the end of the
+* step, in one pass that keeps the order of the others.
+*
+* New ants come from newAnt(), which reuses the Ant of one that has been
+* removed when it can, so ants dying and being born each step
+* doesn't make garbage; getNumAntsAllocated() counts the Ants it made.
+*
+* To step an ant (or put it into the world), get it with load(i),
+* and call store(i) once it has moved.  For a ListAntPopulation that is
+* just the Ant; an ArrayAntPopulation copies ant i into an Ant to
+* step, and store() copies its new location back.
+*/
+
+import java.util.List;
+
+public interface AntPopulation {
+
+	public int size();
+
+	/**
+	 * newAnt
+	 * @return an Ant as new (next id, age 0, live, ...), to set up and add():
+	 * an Ant of a removed ant, if there is one, else a new one.
+	 * NB: it is only good until the next newAnt() (an ArrayAntPopulation
+	 * reuses the one Ant, since add() copies it), and after remove(i) or
+	 * removeDead() an Ant from getAnt(i) may be reused.
+	 */
+	public Ant newAnt();
+
+	/**
+	 * getNumAntsAllocated
+	 * @return how many Ant objects newAnt() has had to make.
+	 */
+	public int getNumAntsAllocated();
+
+	/**
+	 * add
+	 * add ant (an ArrayAntPopulation copies its fields, and doesn't keep it).
+	 * @return its index.
+	 */
+	public int add( Ant ant );
+
+	/**
+	 * remove
+	 * remove ant i (just from the population, not from the world).
+	 */
+	public void remove( int i );
+
+	/**
+	 * markDead
+	 * mark ant i dead; it keeps its index (and its values) until removeDead().
+	 */
+	public void markDead( int i );
+	public boolean isDead( int i );
+
+	/**
+	 * removeDead
+	 * remove all the ants marked dead, keeping the order of the rest.
+	 * O(size()), or O(1) if none are.
+	 */
+	public void removeDead();
+
+	/**
+	 * load, store
+	 * @return ant i, to step or put into the world, then store( i ).
+	 * Only one loaded ant at a time.
+	 */
+	public Ant load( int i );
+	public void store( int i );
+
+	public int getId( int i );
+	public int getX( int i );
+	public int getY( int i );
+	public int getAge( int i );
+	public double getWeight( int i );
+	public double getProbRandMove( int i );
+	public double getProbDieCenter( int i );
+
+	/**
+	 * incrementAges
+	 * add incAge to the age of every ant.
+	 */
+	public void incrementAges( int incAge );
+
+	/**
+	 * shuffle
+	 * put the ants in a random order.
+	 */
+	public void shuffle();
+
+	/**
+	 * getAnt
+	 * @return an Ant for ant i, for the GUI, probes, printing and the like:
+	 * it keeps showing ant i (as it moves, ages, ...) and setting its
+	 * fields sets those of ant i, until ant i is removed.
+	 */
+	public Ant getAnt( int i );
+
+	/**
+	 * getAnts
+	 * @return all the ants, as a List of getAnt(i)'s, that follows
+	 * the population as ants are added and removed (e.g., for the GUI).
+	 */
+	public List<Ant> getAnts();
+
+}
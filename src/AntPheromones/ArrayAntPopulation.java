@@ -0,0 +1,288 @@
+package  AntPheromones;
+
+/**
+ArrayAntPopulation
+
+An AntPopulation stored as a structure of arrays: one array (column)
+per Ant field, with ant i at index i of each.  So the loops over all
+the ants (the stats, aging) are plain loops over int[]s and double[]s,
+which the JIT can unroll and vectorize, and there is no Ant object
+per ant (with its header, Color and so on): 40 bytes per ant in all.
+The arrays grow by doubling.
+
+The ants are kept dense: remove(i) moves the last ant into i, so it is
+O(1), but (unlike ListAntPopulation) the order of the ants changes.
+removeDead() keeps the order, like ListAntPopulation, so as the Model
+removes the ants that die that way, runs are the same with either
+(except for shuffle, with its own random order).  shuffle() is a
+Fisher-Yates shuffle of the columns, with the Model's uniform random
+numbers.
+
+Since there are no Ant objects for the ants:
+* load(i) copies ant i into the one "cursor" Ant, which is what steps,
+  and store(i) copies its x,y back.  The cursor is also what the world
+  holds in every cell with one of our ants in it (the worlds only need
+  an ObjectInGrid to tell where things move, not one per ant).
+* newAnt() is always the one "newborn" Ant, since add() just copies it.
+* getAnt(i) makes an Ant "view" of ant i, the first time it is asked
+  for, for the GUI and probes.  Views are kept up to date as their ants
+  move and age, and what is set in a view is copied into the columns.
+  getAnts() is a List of views, made only as they are asked for.
+  Once ant i has a view, the view is what its cell in Ant.world holds
+  (getAnt puts it there, and load(i) returns the view instead of the
+  cursor, so it is what moves), so probing the cell gives that ant.
+*/
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ArrayAntPopulation implements AntPopulation {
+
+	protected int		size = 0;
+	protected int[]		id, x, y, age;
+	protected double[]	weight, probRandMove, probDieCenter;
+	protected boolean[]	dead;
+	protected int		numDead = 0;
+
+	protected Ant		cursor;				// load() copies an ant into this
+	protected Ant		loaded;				// what load() returned (cursor or a view)
+	protected Ant		newborn;			// what newAnt() returns
+	protected int		numAntsAllocated = 0;
+	protected Ant[]		views;				// made by getAnt(); null if none yet
+	protected int		numViews = 0;
+
+	public ArrayAntPopulation ( int capacity ) {
+		capacity = Math.max( 16, capacity );
+		id = new int[ capacity ];
+		x = new int[ capacity ];
+		y = new int[ capacity ];
+		age = new int[ capacity ];
+		weight = new double[ capacity ];
+		probRandMove = new double[ capacity ];
+		probDieCenter = new double[ capacity ];
+		dead = new boolean[ capacity ];
+		cursor = new Ant( null, -1 );
+	}
+
+	public int size () { return size; }
+
+	public Ant newAnt () {
+		if ( newborn == null ) {
+			newborn = new Ant( null, -1 );
+			++numAntsAllocated;
+		}
+		newborn.reset();
+		return newborn;
+	}
+
+	public int getNumAntsAllocated () { return numAntsAllocated; }
+
+	public int add ( Ant ant ) {
+		if ( size == id.length )
+			grow();
+		copyFrom( ant, size );
+		dead[size] = false;
+		return size++;
+	}
+
+	/**
+	 * remove
+	 * move the last ant into i.
+	 */
+	public void remove ( int i ) {
+		int last = --size;
+		if ( dead[i] )
+			--numDead;
+		dropView( i );
+		if ( i != last )
+			move( last, i );
+	}
+
+	public void markDead ( int i ) {
+		if ( !dead[i] ) {
+			dead[i] = true;
+			++numDead;
+		}
+	}
+
+	public boolean isDead ( int i ) { return dead[i]; }
+
+	public void removeDead () {
+		if ( numDead == 0 )
+			return;
+		int n = 0;
+		for ( int i = 0; i < size; ++i ) {
+			if ( dead[i] )
+				dropView( i );
+			else {
+				if ( n != i )
+					move( i, n );
+				++n;
+			}
+		}
+		size = n;
+		numDead = 0;
+	}
+
+	public Ant load ( int i ) {
+		loaded = ( views != null && views[i] != null ) ? views[i] : cursor;
+		loadInto( loaded, i );
+		return loaded;
+	}
+
+	public void store ( int i ) {
+		x[i] = loaded.x;
+		y[i] = loaded.y;
+		if ( views != null && views[i] != null ) {
+			views[i].x = x[i];
+			views[i].y = y[i];
+		}
+	}
+
+	public int getId ( int i ) { return id[i]; }
+	public int getX ( int i ) { return x[i]; }
+	public int getY ( int i ) { return y[i]; }
+	public int getAge ( int i ) { return age[i]; }
+	public double getWeight ( int i ) { return weight[i]; }
+	public double getProbRandMove ( int i ) { return probRandMove[i]; }
+	public double getProbDieCenter ( int i ) { return probDieCenter[i]; }
+
+	public void incrementAges ( int incAge ) {
+		int[] a = age;
+		for ( int i = 0; i < size; ++i )
+			a[i] += incAge;
+		if ( numViews > 0 ) {
+			for ( int i = 0; i < size; ++i )
+				if ( views[i] != null )
+					views[i].age = a[i];
+		}
+	}
+
+	public void shuffle () {
+		for ( int i = 0; i < size - 1; ++i ) {
+			int j = Model.getUniformIntFromTo( i, size - 1 );
+			if ( j != i )
+				swap( i, j );
+		}
+	}
+
+	public Ant getAnt ( int i ) {
+		if ( views == null )
+			views = new Ant[ id.length ];
+		if ( views[i] == null ) {
+			views[i] = new Ant( this, i );
+			++numViews;
+			// the cell holds the view from now on (same occupancy, so
+			// no free cell index or OccupancyListener sees a change)
+			if ( Ant.world != null && Ant.world.getObjectAt( x[i], y[i] ) == cursor )
+				Ant.world.putObjectAt( x[i], y[i], views[i] );
+		}
+		return views[i];
+	}
+
+	public List<Ant> getAnts () {
+		return new AbstractList<Ant>() {
+			public Ant get ( int i ) {
+				if ( i < 0 || i >= size )
+					throw new IndexOutOfBoundsException( "ant " + i + " of " + size );
+				return getAnt( i );
+			}
+			public int size () { return size; }
+		};
+	}
+
+	/**
+	 * loadInto
+	 * set ant's fields from those of ant i.
+	 */
+	protected void loadInto ( Ant ant, int i ) {
+		ant.id = id[i];
+		ant.x = x[i];
+		ant.y = y[i];
+		ant.age = age[i];
+		ant.weight = weight[i];
+		ant.probRandMove = probRandMove[i];
+		ant.probDieCenter = probDieCenter[i];
+		ant.live = !dead[i];
+	}
+
+	/**
+	 * copyFrom
+	 * set the fields of ant i from those of ant (e.g., a view that was changed).
+	 */
+	protected void copyFrom ( Ant ant, int i ) {
+		id[i] = ant.id;
+		x[i] = ant.x;
+		y[i] = ant.y;
+		age[i] = ant.age;
+		weight[i] = ant.weight;
+		probRandMove[i] = ant.probRandMove;
+		probDieCenter[i] = ant.probDieCenter;
+	}
+
+	/**
+	 * move
+	 * move ant from to index to (over whatever was there; its view is dropped first).
+	 */
+	private void move ( int from, int to ) {
+		id[to] = id[from];
+		x[to] = x[from];
+		y[to] = y[from];
+		age[to] = age[from];
+		weight[to] = weight[from];
+		probRandMove[to] = probRandMove[from];
+		probDieCenter[to] = probDieCenter[from];
+		dead[to] = dead[from];
+		if ( views != null ) {
+			views[to] = views[from];
+			if ( views[to] != null ) {
+				views[to].index = to;
+				views[from] = null;
+			}
+		}
+	}
+
+	private void dropView ( int i ) {
+		if ( views != null && views[i] != null ) {
+			views[i].population = null;		// it no longer shows an ant of ours
+			views[i] = null;
+			--numViews;
+		}
+	}
+
+	private void swap ( int i, int j ) {
+		int t;
+		double d;
+		t = id[i];  id[i] = id[j];  id[j] = t;
+		t = x[i];  x[i] = x[j];  x[j] = t;
+		t = y[i];  y[i] = y[j];  y[j] = t;
+		t = age[i];  age[i] = age[j];  age[j] = t;
+		d = weight[i];  weight[i] = weight[j];  weight[j] = d;
+		d = probRandMove[i];  probRandMove[i] = probRandMove[j];  probRandMove[j] = d;
+		d = probDieCenter[i];  probDieCenter[i] = probDieCenter[j];  probDieCenter[j] = d;
+		boolean b = dead[i];  dead[i] = dead[j];  dead[j] = b;
+		if ( views != null ) {
+			Ant v = views[i];  views[i] = views[j];  views[j] = v;
+			if ( views[i] != null )
+				views[i].index = i;
+			if ( views[j] != null )
+				views[j].index = j;
+		}
+	}
+
+	private void grow () {
+		int n = 2 * id.length;
+		id = Arrays.copyOf( id, n );
+		x = Arrays.copyOf( x, n );
+		y = Arrays.copyOf( y, n );
+		age = Arrays.copyOf( age, n );
+		weight = Arrays.copyOf( weight, n );
+		probRandMove = Arrays.copyOf( probRandMove, n );
+		probDieCenter = Arrays.copyOf( probDieCenter, n );
+		dead = Arrays.copyOf( dead, n );
+		if ( views != null )
+			views = Arrays.copyOf( views, n );
+	}
+
+}
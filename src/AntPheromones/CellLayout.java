@@ -0,0 +1,101 @@
+package  AntPheromones;
+
+/**
+CellLayout
+
+Maps cell x,y of a world to an index into a flat array, in one of
+three ways of laying the cells out in memory:
+
+* rowMajorLayout -- y * xSize + x.  Simple, but the cells above and
+                    below x,y are a whole row away.
+* tiledLayout    -- 8 x 8 tiles, row-major within each tile, tiles
+                    in row-major order.  A Moore neighborhood mostly
+                    falls in one tile (64 cells = a few cache lines).
+* mortonLayout   -- 64 x 64 tiles, Z-order (Morton order, x and y bits
+                    interleaved) within each tile.  Cells near each other
+                    in x and y are near each other in memory at every scale.
+
+The tiled layouts pad the world out to whole tiles, so use
+getNumCells() (not xSize * ySize) to size the array.
+
+See LayoutBenchmark for how they compare for ant-like access patterns.
+Only LayoutBenchmark uses this: row major was the fastest there, so
+IntTorusWorld (and PheromoneField) just store the cells row by row,
+with no layout in the way.
+*/
+
+public class CellLayout {
+
+	public static final int rowMajorLayout = 0;
+	public static final int tiledLayout = 1;
+	public static final int mortonLayout = 2;
+
+	protected static final int TILED_SHIFT = 3;		// 8 x 8 tiles
+	protected static final int MORTON_SHIFT = 6;	// 64 x 64 tiles
+
+	// spread the 6 low bits of i out to the even bits: abcdef -> 0a0b0c0d0e0f
+	protected static final int[] SPREAD = new int[ 1 << MORTON_SHIFT ];
+	static {
+		for ( int i = 0; i < SPREAD.length; ++i ) {
+			int s = 0;
+			for ( int b = 0; b < MORTON_SHIFT; ++b )
+				s |= ( ( i >> b ) & 1 ) << ( 2 * b );
+			SPREAD[i] = s;
+		}
+	}
+
+	public final int	type;
+	public final int	xSize, ySize;
+	protected int		shift, mask;		// tile size is 1 << shift
+	protected int		tilesX, tilesY;
+	protected int		numCells;
+
+	public CellLayout ( int type, int xSize, int ySize ) {
+		if ( type != rowMajorLayout && type != tiledLayout && type != mortonLayout ) {
+			System.err.printf( "\n** CellLayout: illegal layout %d, using row major.\n", type );
+			type = rowMajorLayout;
+		}
+		this.type = type;
+		this.xSize = xSize;
+		this.ySize = ySize;
+		if ( type == rowMajorLayout ) {
+			numCells = xSize * ySize;
+			return;
+		}
+		shift = ( type == tiledLayout ) ? TILED_SHIFT : MORTON_SHIFT;
+		mask = ( 1 << shift ) - 1;
+		tilesX = ( xSize + mask ) >> shift;
+		tilesY = ( ySize + mask ) >> shift;
+		numCells = ( tilesX * tilesY ) << ( 2 * shift );
+	}
+
+	/**
+	 * getNumCells
+	 * @return the length of array needed (including any padding).
+	 */
+	public int getNumCells () { return numCells; }
+
+	public boolean isRowMajor () { return type == rowMajorLayout; }
+
+	/**
+	 * index
+	 * @return where cell x,y (which must be in the world) is in the array.
+	 */
+	public int index ( int x, int y ) {
+		if ( type == rowMajorLayout )
+			return y * xSize + x;
+		int tile = ( y >> shift ) * tilesX + ( x >> shift );
+		if ( type == tiledLayout )
+			return ( tile << ( 2 * TILED_SHIFT ) ) | ( ( y & mask ) << TILED_SHIFT ) | ( x & mask );
+		return ( tile << ( 2 * MORTON_SHIFT ) ) | ( SPREAD[ y & mask ] << 1 ) | SPREAD[ x & mask ];
+	}
+
+	public static String getName ( int type ) {
+		if ( type == tiledLayout )
+			return "tiled 8x8";
+		if ( type == mortonLayout )
+			return "Morton 64x64";
+		return "row major";
+	}
+
+}
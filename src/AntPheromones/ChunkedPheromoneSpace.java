@@ -0,0 +1,318 @@
+package  AntPheromones;
+
+/**
+ChunkedPheromoneSpace
+
+A PheromoneSpace for very big worlds where most of the cells have
+no pheromone.  The space is cut into TILE x TILE tiles, and a tile's
+read and write arrays are only allocated once something non-zero
+is put in it (or diffuses into it).  A tile with no arrays is all zeros.
+When a tile diffuses down to all zeros its arrays are dropped again.
+NB: the values are exact (see PheromoneField.validate), so a faint tail
+of pheromone keeps creeping out from the source until it underflows
+to zero, and the allocated area grows with it for a while.
+setEpsilon( eps ) sets new values below eps to 0 instead, so tiles
+with less than eps everywhere are dropped.
+
+Like PheromoneField, diffuse() swaps each tile's read and write arrays
+(instead of copying write into read), and update() copies just the
+cells put since the last update().  inject() changes a cell in both
+copies at once.  So a step is one pass over the allocated tiles.
+
+The total is kept as we go: diffuse() adds up the new values as it
+makes them, and update() and inject() add the changes they make,
+so getTotalValue() is O(1).
+
+diffuse() only visits the allocated tiles and the tiles next to them
+(since pheromone can only spread one cell per step), and uses the same
+kernel as PheromoneField's exactKernel, wrapping around the edges:
+   avg  = ( 4*(N + E + S + W) + NW + NE + SE + SW ) / 20
+   new  = evap * ( old + K * (avg - old) )
+
+Cell x,y is at index  (y % TILE) * TILE + (x % TILE)  of tile
+(y / TILE) * tilesX + (x / TILE).  Tiles at the right and bottom
+edges of the world may be partly unused.
+*/
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class ChunkedPheromoneSpace implements PheromoneSpace {
+
+	public static final int TILE_SHIFT = 6;
+	public static final int TILE = 1 << TILE_SHIFT;	// tiles are TILE x TILE cells
+	protected static final int MASK = TILE - 1;
+
+	protected int		xSize, ySize;
+	protected int		tilesX, tilesY;
+	protected double	diffusionK, evapRate;
+	protected double	epsilon = 0.0;			// new values below this are 0 (0: exact)
+
+	protected double[][] readTiles, writeTiles;		// null -> all zeros
+	protected int[]		activeTiles;				// ids of the allocated tiles
+	protected int		numActive = 0;
+	protected int[]		activePos;					// tile id -> where in activeTiles, or -1
+
+	protected int[]		candidates = new int[64];	// tiles to visit in diffuse()
+	protected int[]		stamp;						// stamp[t] == stampNow if t is a candidate
+	protected int		stampNow = 0;
+	protected int[]		zeroTiles = new int[16];	// tiles that diffused to all zeros
+
+	protected double	total = 0;					// of the read copy
+	protected int[]		dirtyTiles = new int[16];	// cells put since the last update():
+	protected int[]		dirtyCells = new int[16];	//   tile id and index in the tile
+	protected int		numDirty = 0;
+	protected double	diffuseTotal;				// of the values diffuse() has made so far
+
+	protected ValueDisplayAdapter displaySpace;		// made only if asked for
+
+	public ChunkedPheromoneSpace ( double k, double e, int sizeX, int sizeY ) {
+		diffusionK = k;
+		evapRate = e;
+		xSize = sizeX;
+		ySize = sizeY;
+		tilesX = ( xSize + TILE - 1 ) / TILE;
+		tilesY = ( ySize + TILE - 1 ) / TILE;
+		readTiles = new double[ tilesX * tilesY ][];
+		writeTiles = new double[ tilesX * tilesY ][];
+		activeTiles = new int[ 64 ];
+		activePos = new int[ tilesX * tilesY ];
+		java.util.Arrays.fill( activePos, -1 );
+		stamp = new int[ tilesX * tilesY ];
+	}
+
+	public int getSizeX () { return xSize; }
+	public int getSizeY () { return ySize; }
+	public int getNumActiveTiles () { return numActive; }
+	public int getHalo () { return 0; }
+
+	public void setDiffusionConstant ( double k ) { diffusionK = k; }
+	public void setEvaporationRate ( double e ) { evapRate = e; }
+	public double getEpsilon () { return epsilon; }
+	public void setEpsilon ( double eps ) { epsilon = Math.max( 0.0, eps ); }
+
+	public double getValueAt ( int x, int y ) {
+		double[] t = readTiles[ ( y >> TILE_SHIFT ) * tilesX + ( x >> TILE_SHIFT ) ];
+		if ( t == null )
+			return 0.0;
+		return t[ ( ( y & MASK ) << TILE_SHIFT ) | ( x & MASK ) ];
+	}
+
+	public void putValueAt ( int x, int y, double v ) {
+		int id = ( y >> TILE_SHIFT ) * tilesX + ( x >> TILE_SHIFT );
+		if ( writeTiles[id] == null ) {
+			if ( v == 0.0 )
+				return;		// already zero
+			allocateTile( id );
+		}
+		int i = ( ( y & MASK ) << TILE_SHIFT ) | ( x & MASK );
+		writeTiles[id][i] = v;
+		if ( numDirty == dirtyTiles.length ) {
+			dirtyTiles = java.util.Arrays.copyOf( dirtyTiles, 2 * numDirty );
+			dirtyCells = java.util.Arrays.copyOf( dirtyCells, 2 * numDirty );
+		}
+		dirtyTiles[ numDirty ] = id;
+		dirtyCells[ numDirty++ ] = i;
+	}
+
+	public void update () {
+		for ( int d = 0; d < numDirty; ++d ) {
+			double[] r = readTiles[ dirtyTiles[d] ], w = writeTiles[ dirtyTiles[d] ];
+			int i = dirtyCells[d];
+			total += w[i] - r[i];
+			r[i] = w[i];
+		}
+		numDirty = 0;
+	}
+
+	/**
+	 * inject
+	 * add amount at x,y (not over max), in both copies.
+	 */
+	public void inject ( int x, int y, double amount, double max ) {
+		double old = getValueAt( x, y );
+		double v = amount + old;
+		v = Math.min( v, max );
+		int id = ( y >> TILE_SHIFT ) * tilesX + ( x >> TILE_SHIFT );
+		if ( readTiles[id] == null ) {
+			if ( v == 0.0 )
+				return;
+			allocateTile( id );
+		}
+		int i = ( ( y & MASK ) << TILE_SHIFT ) | ( x & MASK );
+		readTiles[id][i] = v;
+		writeTiles[id][i] = v;
+		total += v - old;
+	}
+
+	/**
+	 * diffuse
+	 * diffuse from the read copy into the write copy, for all allocated
+	 * tiles and their neighbors, then swap them and drop any tiles
+	 * that are now all zeros.
+	 */
+	public void diffuse () {
+		int numCandidates = collectCandidates();
+		int numZero = 0;
+		diffuseTotal = 0;
+		for ( int c = 0; c < numCandidates; ++c ) {
+			int id = candidates[c];
+			boolean nonZero;
+			if ( readTiles[id] != null )
+				nonZero = diffuseTile( id );
+			else
+				nonZero = diffuseEmptyTile( id );
+			if ( !nonZero && writeTiles[id] != null ) {
+				if ( numZero == zeroTiles.length )
+					zeroTiles = java.util.Arrays.copyOf( zeroTiles, 2 * numZero );
+				zeroTiles[ numZero++ ] = id;
+			}
+		}
+		numDirty = 0;		// anything put is lost
+		for ( int i = 0; i < numActive; ++i ) {
+			int id = activeTiles[i];
+			double[] t = readTiles[id];
+			readTiles[id] = writeTiles[id];
+			writeTiles[id] = t;
+		}
+		total = diffuseTotal;
+		for ( int i = 0; i < numZero; ++i )
+			releaseTile( zeroTiles[i] );
+	}
+
+	public double getTotalValue () {
+		return total;
+	}
+
+	public double recountTotalValue () {
+		double t = 0;
+		for ( int i = 0; i < numActive; ++i ) {
+			double[] tile = readTiles[ activeTiles[i] ];
+			for ( int j = 0; j < TILE * TILE; ++j )
+				t += tile[j];
+		}
+		total = t;
+		return total;
+	}
+
+	public Discrete2DSpace getDisplaySpace () {
+		if ( displaySpace == null )
+			displaySpace = new ValueDisplayAdapter( this );
+		return displaySpace;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// diffusion
+	//
+
+	// the active tiles, and the 8 tiles around each (wrapped), each just once.
+	private int collectCandidates () {
+		int n = 0;
+		++stampNow;
+		for ( int i = 0; i < numActive; ++i ) {
+			int id = activeTiles[i];
+			int tx = id % tilesX, ty = id / tilesX;
+			for ( int dy = -1; dy <= 1; ++dy ) {
+				int nty = MooreNeighborhood.wrap( ty + dy, tilesY );
+				for ( int dx = -1; dx <= 1; ++dx ) {
+					int nid = nty * tilesX + MooreNeighborhood.wrap( tx + dx, tilesX );
+					if ( stamp[nid] == stampNow )
+						continue;
+					stamp[nid] = stampNow;
+					if ( n == candidates.length )
+						candidates = java.util.Arrays.copyOf( candidates, 2 * n );
+					candidates[ n++ ] = nid;
+				}
+			}
+		}
+		return n;
+	}
+
+	// diffuse an allocated tile.  @return true if any new value is non-zero
+	private boolean diffuseTile ( int id ) {
+		double[] r = readTiles[id], w = writeTiles[id];
+		int x0 = ( id % tilesX ) << TILE_SHIFT, y0 = ( id / tilesX ) << TILE_SHIFT;
+		int width = Math.min( TILE, xSize - x0 ), height = Math.min( TILE, ySize - y0 );
+		boolean nonZero = false;
+		for ( int ly = 0; ly < height; ++ly ) {
+			boolean rowInside = ( ly > 0 && ly < height - 1 );
+			for ( int lx = 0; lx < width; ++lx ) {
+				int i = ( ly << TILE_SHIFT ) | lx;
+				double v;
+				if ( rowInside && lx > 0 && lx < width - 1 ) {
+					double sum = 4 * ( r[i-TILE] + r[i+1] + r[i+TILE] + r[i-1] )
+						+ r[i-TILE-1] + r[i-TILE+1] + r[i+TILE+1] + r[i+TILE-1];
+					double old = r[i];
+					v = evapRate * ( old + diffusionK * ( sum / 20.0 - old ) );
+					if ( epsilon > 0.0 && v < epsilon )
+						v = 0.0;
+				}
+				else
+					v = diffuseCell( x0 + lx, y0 + ly );
+				w[i] = v;
+				if ( v != 0.0 ) {
+					nonZero = true;
+					diffuseTotal += v;
+				}
+			}
+		}
+		return nonZero;
+	}
+
+	// diffuse into a tile with no arrays: only its edge cells can get anything.
+	// allocate it only if they do.  @return true if any new value is non-zero
+	private boolean diffuseEmptyTile ( int id ) {
+		int x0 = ( id % tilesX ) << TILE_SHIFT, y0 = ( id / tilesX ) << TILE_SHIFT;
+		int width = Math.min( TILE, xSize - x0 ), height = Math.min( TILE, ySize - y0 );
+		boolean nonZero = false;
+		for ( int ly = 0; ly < height; ++ly ) {
+			int step = ( ly == 0 || ly == height - 1 ) ? 1 : Math.max( 1, width - 1 );
+			for ( int lx = 0; lx < width; lx += step ) {
+				double v = diffuseCell( x0 + lx, y0 + ly );
+				if ( v != 0.0 ) {
+					if ( writeTiles[id] == null )
+						allocateTile( id );
+					writeTiles[id][ ( ly << TILE_SHIFT ) | lx ] = v;
+					nonZero = true;
+					diffuseTotal += v;
+				}
+			}
+		}
+		return nonZero;
+	}
+
+	// new value for one cell, looking up (wrapped) neighbors in any tile
+	private double diffuseCell ( int x, int y ) {
+		int pX = x == 0 ? xSize - 1 : x - 1, nX = x == xSize - 1 ? 0 : x + 1;
+		int pY = y == 0 ? ySize - 1 : y - 1, nY = y == ySize - 1 ? 0 : y + 1;
+		double sum = 4 * ( getValueAt( x, pY ) + getValueAt( nX, y )
+						   + getValueAt( x, nY ) + getValueAt( pX, y ) )
+			+ getValueAt( pX, pY ) + getValueAt( nX, pY )
+			+ getValueAt( nX, nY ) + getValueAt( pX, nY );
+		double old = getValueAt( x, y );
+		double v = evapRate * ( old + diffusionK * ( sum / 20.0 - old ) );
+		return ( epsilon > 0.0 && v < epsilon ) ? 0.0 : v;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// the tiles
+	//
+	private void allocateTile ( int id ) {
+		readTiles[id] = new double[ TILE * TILE ];
+		writeTiles[id] = new double[ TILE * TILE ];
+		if ( numActive == activeTiles.length )
+			activeTiles = java.util.Arrays.copyOf( activeTiles, 2 * numActive );
+		activePos[id] = numActive;
+		activeTiles[ numActive++ ] = id;
+	}
+
+	private void releaseTile ( int id ) {
+		readTiles[id] = null;
+		writeTiles[id] = null;
+		int p = activePos[id];
+		int last = activeTiles[ --numActive ];
+		activeTiles[p] = last;
+		activePos[last] = p;
+		activePos[id] = -1;
+	}
+
+}
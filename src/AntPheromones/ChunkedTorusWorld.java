@@ -0,0 +1,279 @@
+package  AntPheromones;
+
+/**
+ChunkedTorusWorld
+
+A torus world for very big, mostly empty worlds (e.g., 20000 x 20000
+with a few thousand ants).  The world is cut into TILE x TILE tiles,
+and a tile's array of occupants is only allocated when something
+is put in it, and dropped again when it is emptied.
+So memory goes with the number of occupied tiles, not the world size.
+
+Movement rules (and the odd bits) are the same as TorusWorld:
+* moveObject wraps dx,dy moves around the torus
+* moveObjectTo expects x,y already in the world, else it returns false
+* getNumberOfNeighbors does not wrap (as Object2DGrid.getMooreNeighbors)
+
+Since the world is mostly empty, placeAtRandomLocation just tries
+random cells until it finds an empty one (no free cell index, which
+would be as big as the world).  If that takes too many tries it
+scans for the next empty cell from a random start.
+
+For the GUI, getDisplaySpace() returns a GridDisplayAdapter
+(which is as big as the world, so only for modest sizes!).
+*/
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class ChunkedTorusWorld implements TorusSpace {
+
+	public static final int TILE_SHIFT = 6;
+	public static final int TILE = 1 << TILE_SHIFT;	// tiles are TILE x TILE cells
+	protected static final int MASK = TILE - 1;
+
+	public static final int maxRandomTries = 64;	// before placeAtRandomLocation scans
+
+	/** the Model that is using this world. */
+	public Model theModel;
+
+	protected int		xSize, ySize;
+	protected int		tilesX, tilesY;
+	protected ObjectInGrid[][] tiles;		// occupants of each tile, or null if empty
+	protected int[]		tileCounts;			// number of occupants of each tile
+	protected int		numObjects = 0;
+	protected int		numTiles = 0;		// number of allocated tiles
+	protected OccupancyListener[] listeners = new OccupancyListener[0];
+
+	protected GridDisplayAdapter displaySpace;   // made only if asked for
+
+	public ChunkedTorusWorld ( int sizeX, int sizeY, Model aModel ) {
+		xSize = sizeX;
+		ySize = sizeY;
+		theModel = aModel;
+		tilesX = ( xSize + TILE - 1 ) / TILE;
+		tilesY = ( ySize + TILE - 1 ) / TILE;
+		tiles = new ObjectInGrid[ tilesX * tilesY ][];
+		tileCounts = new int[ tilesX * tilesY ];
+	}
+
+	public int getSizeX () { return xSize; }
+	public int getSizeY () { return ySize; }
+	public int getNumObjects () { return numObjects; }
+	public int getNumAllocatedTiles () { return numTiles; }
+
+	public boolean isOpen ( int x, int y ) {
+		ObjectInGrid[] t = tiles[ ( y >> TILE_SHIFT ) * tilesX + ( x >> TILE_SHIFT ) ];
+		return t == null || t[ ( ( y & MASK ) << TILE_SHIFT ) | ( x & MASK ) ] == null;
+	}
+
+	public Object getObjectAt ( int x, int y ) {
+		ObjectInGrid[] t = tiles[ ( y >> TILE_SHIFT ) * tilesX + ( x >> TILE_SHIFT ) ];
+		if ( t == null )
+			return null;
+		return t[ ( ( y & MASK ) << TILE_SHIFT ) | ( x & MASK ) ];
+	}
+
+	/**
+	 * putObjectAt
+	 * put obj in cell x,y, or empty the cell if obj is null.
+	 * NB: obj must be an ObjectInGrid (or null).
+	 */
+	public void putObjectAt ( int x, int y, Object obj ) {
+		boolean wasEmpty = isOpen( x, y );
+		if ( obj == null ) {
+			if ( wasEmpty )
+				return;
+			setCell( x, y, null );
+			for ( OccupancyListener l : listeners )
+				l.cellEmptied( x, y );
+		}
+		else {
+			setCell( x, y, (ObjectInGrid) obj );
+			if ( wasEmpty ) {
+				for ( OccupancyListener l : listeners )
+					l.cellOccupied( x, y );
+			}
+		}
+	}
+
+	public void addOccupancyListener ( OccupancyListener listener ) {
+		listeners = java.util.Arrays.copyOf( listeners, listeners.length + 1 );
+		listeners[ listeners.length - 1 ] = listener;
+	}
+
+	public void removeOccupancyListener ( OccupancyListener listener ) {
+		OccupancyListener[] newListeners = new OccupancyListener[ listeners.length ];
+		int n = 0;
+		for ( OccupancyListener l : listeners )
+			if ( l != listener )
+				newListeners[n++] = l;
+		listeners = java.util.Arrays.copyOf( newListeners, n );
+	}
+
+	/**
+	 * placeAtRandomLocation
+	 * try random cells till we find an empty one; false only if full.
+	 */
+	public boolean placeAtRandomLocation ( ObjectInGrid obj ) {
+		long numCells = (long) xSize * ySize;
+		if ( numObjects >= numCells )
+			return false;
+
+		int x = 0, y = 0;
+		boolean found = false;
+		for ( int tries = 0; tries < maxRandomTries && !found; ++tries ) {
+			x = Model.getUniformIntFromTo( 0, xSize - 1 );
+			y = Model.getUniformIntFromTo( 0, ySize - 1 );
+			found = isOpen( x, y );
+		}
+		while ( !found ) {	// very crowded: next empty cell after x,y
+			if ( ++x == xSize ) {
+				x = 0;
+				if ( ++y == ySize )
+					y = 0;
+			}
+			found = isOpen( x, y );
+		}
+		putObjectAt( x, y, obj );
+		obj.setX( x );
+		obj.setY( y );
+		return true;
+	}
+
+	/**
+	 * moveObject
+	 * try to move obj by dX,dY (wrapped around the torus) if target is empty.
+	 */
+	public boolean moveObject ( ObjectInGrid obj, int dX, int dY ) {
+		int newX = xnorm( obj.getX() + dX );
+		int newY = ynorm( obj.getY() + dY );
+		return moveIfOpen( obj, newX, newY );
+	}
+
+	/**
+	 * moveObjectTo
+	 * try to move obj to newX,newY; false if that is off the world or occupied.
+	 */
+	public boolean moveObjectTo ( ObjectInGrid obj, int newX, int newY ) {
+		if ( newX < 0 || newY < 0 || newX >= xSize || newY >= ySize ) {
+			return false;
+		}
+		return moveIfOpen( obj, newX, newY );
+	}
+
+	private boolean moveIfOpen ( ObjectInGrid obj, int newX, int newY ) {
+		if ( !isOpen( newX, newY ) )
+			return false;
+
+		int oldX = obj.getX(), oldY = obj.getY();
+		setCell( newX, newY, obj );    // first, so a move within a tile
+		setCell( oldX, oldY, null );   // doesn't drop and remake it
+		for ( OccupancyListener l : listeners ) {
+			l.cellEmptied( oldX, oldY );
+			l.cellOccupied( newX, newY );
+		}
+		obj.setX( newX );
+		obj.setY( newY );
+		return true;
+	}
+
+	/**
+	 * getOpenNeighborLocations
+	 * same as TorusWorld: Points (torus normalized) for each open cell
+	 * in the Moore neighborhood, including x,y if its open.
+	 */
+	public ArrayList<Point> getOpenNeighborLocations ( int x, int y ) {
+		ArrayList<Point> ptList = new ArrayList<Point>();
+		for ( int dy = -1; dy <= 1; ++dy ) {
+			int tynorm = ynorm( y + dy );
+			for ( int dx = -1; dx <= 1; ++dx ) {
+				int txnorm = xnorm( x + dx );
+				if ( isOpen( txnorm, tynorm ) )
+					ptList.add( new Point( txnorm, tynorm ) );
+			}
+		}
+		return ptList;
+	}
+
+	/**
+	 * getOpenNeighborMask
+	 * bit k set if the k-th neighbor (see MooreNeighborhood.MASK_DX) is empty.
+	 */
+	public int getOpenNeighborMask ( int x, int y ) {
+		int mask = 0;
+		for ( int k = 0; k < 8; ++k ) {
+			if ( isOpen( xnorm( x + MooreNeighborhood.MASK_DX[k] ),
+						 ynorm( y + MooreNeighborhood.MASK_DY[k] ) ) )
+				mask |= 1 << k;
+		}
+		return mask;
+	}
+
+	/**
+	 * getNumberOfNeighbors
+	 * count occupied cells within d of x,y, not counting x,y.
+	 * NB: like Object2DGrid.getMooreNeighbors this does not wrap around.
+	 */
+	public int getNumberOfNeighbors ( int x, int y, int d ) {
+		int minX = Math.max( 0, x - d ), maxX = Math.min( xSize - 1, x + d );
+		int minY = Math.max( 0, y - d ), maxY = Math.min( ySize - 1, y + d );
+		int count = 0;
+		for ( int ty = minY; ty <= maxY; ++ty ) {
+			for ( int tx = minX; tx <= maxX; ++tx ) {
+				if ( !isOpen( tx, ty ) )
+					++count;
+			}
+		}
+		if ( x >= 0 && x < xSize && y >= 0 && y < ySize && !isOpen( x, y ) )
+			--count;  // don't count the center
+		return count;
+	}
+
+	public int xnorm ( int x ) {
+		return MooreNeighborhood.wrap( x, xSize );
+	}
+
+	public int ynorm ( int y ) {
+		return MooreNeighborhood.wrap( y, ySize );
+	}
+
+	public Discrete2DSpace getDisplaySpace () {
+		if ( displaySpace == null )
+			displaySpace = new GridDisplayAdapter( this );
+		return displaySpace;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// the tiles
+	//
+
+	// store obj (or null) in x,y, making or dropping the tile as needed.
+	private void setCell ( int x, int y, ObjectInGrid obj ) {
+		int id = ( y >> TILE_SHIFT ) * tilesX + ( x >> TILE_SHIFT );
+		int i = ( ( y & MASK ) << TILE_SHIFT ) | ( x & MASK );
+		ObjectInGrid[] t = tiles[id];
+		if ( t == null ) {
+			if ( obj == null )
+				return;
+			t = tiles[id] = new ObjectInGrid[ TILE * TILE ];
+			++numTiles;
+		}
+		if ( t[i] == null && obj != null ) {
+			++tileCounts[id];
+			++numObjects;
+		}
+		else if ( t[i] != null && obj == null ) {
+			--numObjects;
+			if ( --tileCounts[id] == 0 ) {
+				tiles[id] = null;
+				--numTiles;
+				return;
+			}
+		}
+		t[i] = obj;
+	}
+
+}
@@ -0,0 +1,217 @@
+package  AntPheromones;
+
+/**
+ColoredTileStepper
+
+The Model's coloredActivationOrder: the ants take their steps one
+after another, each seeing the moves made before it, as in the
+one-at-a-time orders, but many of them at once on several threads.
+
+An ant's step only looks at (and moves within) the cells next to it.
+So the world is cut into tiles at least 3 cells wide, colored like a
+3x3 checkerboard (9 colors): two tiles of the same color have two
+other tiles between them, so the ants in them can't see each other's
+moves, and can all step at the same time.  The colors take their turn
+one after another.  Each ant is in the tile it was in at the start of
+the step, so it steps once, even if it moves to another tile.
+
+The result is the same as stepping the ants one at a time in this order:
+color by color, tile by tile, and by index within a tile.  And with any
+number of threads, since
+* each ant decides as in AntIntents, with random numbers from its own
+  stream (seed, step, id), so it doesn't matter which thread steps it;
+* the threads don't touch the world (the worlds, their free cell
+  indexes and OccupancyListeners aren't thread safe, and the free cell
+  indexes change with the order of the changes).  The moves so far in
+  this color are kept in delta[], one byte per cell, which the threads
+  can share since their tiles' cells don't overlap.  Once a color is
+  done, the dead are removed and the moves made on this thread, in the
+  order above, and delta[] is cleared.
+*/
+
+public class ColoredTileStepper extends AntIntents {
+
+	public static final int numColors = 9;
+
+	protected int		tileSize;
+	protected int		xSize, ySize;			// of the world the tiles are for
+	protected int		tilesX, tilesY;
+	protected int[]		tileOfX, tileOfY;		// x -> tile column, y -> tile row
+	protected int[][]	colorTiles;				// the tiles of each color, in order
+	protected int[]		tileStart;				// ants of tile t are order[ tileStart[t] .. tileStart[t+1]-1 ]
+	protected int[]		order;
+	protected byte[]	delta;					// per cell: 0 as in the world, -1 emptied, 1 taken
+	protected int[]		maskOffset = new int[8];	// flat offsets of the MASK_DX,DY neighbors
+	protected int		color;					// being stepped
+
+	public ColoredTileStepper ( Model m, int tileSize ) {
+		super( m );
+		this.tileSize = Math.max( 3, tileSize );
+	}
+
+	public int getTileSize () { return tileSize; }
+
+	/**
+	 * step
+	 * step all the ants in the Model's antPop, as above.
+	 * Dead ants are removed with model.removeAntFromModel (so just marked
+	 * dead in antPop, see AntPopulation.removeDead).
+	 */
+	public void step () {
+		beginStep();
+		if ( xSize != world.getSizeX() || ySize != world.getSizeY() )
+			makeTiles( world.getSizeX(), world.getSizeY() );
+		sortAntsIntoTiles();
+
+		for ( color = 0; color < numColors; ++color ) {
+			if ( colorTiles[color].length == 0 )
+				continue;
+			runJobs();
+			makeMoves( colorTiles[color] );
+		}
+
+		endStep();
+	}
+
+	/**
+	 * makeTiles
+	 * cut the world into tiles of about tileSize (at least 3) cells.
+	 * Along each side there are 1 or 2 tiles (so they can't be next to
+	 * themselves), or a multiple of 3, so the colors match across the edges.
+	 */
+	protected void makeTiles ( int xs, int ys ) {
+		xSize = xs;
+		ySize = ys;
+		tilesX = numTilesAlong( xSize );
+		tilesY = numTilesAlong( ySize );
+		tileOfX = tileOf( xSize, tilesX );
+		tileOfY = tileOf( ySize, tilesY );
+
+		int[] numOfColor = new int[ numColors ];
+		for ( int ty = 0; ty < tilesY; ++ty )
+			for ( int tx = 0; tx < tilesX; ++tx )
+				++numOfColor[ colorOf( tx, ty ) ];
+		colorTiles = new int[ numColors ][];
+		for ( int c = 0; c < numColors; ++c ) {
+			colorTiles[c] = new int[ numOfColor[c] ];
+			numOfColor[c] = 0;
+		}
+		for ( int ty = 0; ty < tilesY; ++ty )
+			for ( int tx = 0; tx < tilesX; ++tx ) {
+				int c = colorOf( tx, ty );
+				colorTiles[c][ numOfColor[c]++ ] = ty * tilesX + tx;
+			}
+
+		tileStart = new int[ tilesX * tilesY + 1 ];
+		delta = new byte[ xSize * ySize ];
+		for ( int k = 0; k < 8; ++k )
+			maskOffset[k] = MooreNeighborhood.MASK_DY[k] * xSize + MooreNeighborhood.MASK_DX[k];
+	}
+
+	private int numTilesAlong ( int size ) {
+		int n = size / tileSize;
+		if ( n < 3 )
+			return Math.min( 2, Math.max( 1, size / 3 ) );
+		return n - n % 3;
+	}
+
+	// tile (0..n-1) of each of size cells, tiles as even as can be
+	private static int[] tileOf ( int size, int n ) {
+		int[] t = new int[ size ];
+		for ( int i = 0; i < n; ++i ) {
+			int from = (int) ( (long) size * i / n ), to = (int) ( (long) size * ( i + 1 ) / n );
+			for ( int x = from; x < to; ++x )
+				t[x] = i;
+		}
+		return t;
+	}
+
+	private static int colorOf ( int tx, int ty ) {
+		return ( ty % 3 ) * 3 + ( tx % 3 );
+	}
+
+	// a counting sort of the ants by tile (by index within each)
+	protected void sortAntsIntoTiles () {
+		if ( order == null || order.length < numAnts )
+			order = new int[ Math.max( 16, 2 * numAnts ) ];
+		int numTiles = tilesX * tilesY;
+		java.util.Arrays.fill( tileStart, 0 );
+		for ( int i = 0; i < numAnts; ++i )
+			++tileStart[ tileOfY[ ants.getY( i ) ] * tilesX + tileOfX[ ants.getX( i ) ] + 1 ];
+		for ( int t = 0; t < numTiles; ++t )
+			tileStart[t+1] += tileStart[t];
+		int[] next = java.util.Arrays.copyOf( tileStart, numTiles );
+		for ( int i = 0; i < numAnts; ++i )
+			order[ next[ tileOfY[ ants.getY( i ) ] * tilesX + tileOfX[ ants.getX( i ) ] ]++ ] = i;
+	}
+
+	// job's share of the tiles of this color
+	protected void runJob ( int job ) {
+		Stream rng = streams[job];
+		int[] ties = tieBuffers[job];
+		int[] tiles = colorTiles[color];
+		for ( int k = job; k < tiles.length; k += numThreads ) {
+			int t = tiles[k];
+			for ( int a = tileStart[t]; a < tileStart[t+1]; ++a ) {
+				int i = order[a];
+				decide( i, rng, ties );
+				if ( dies[i] || moves[i] )
+					delta[ ants.getY( i ) * xSize + ants.getX( i ) ] = -1;
+				if ( moves[i] )
+					delta[ targetY[i] * xSize + targetX[i] ] = 1;
+			}
+		}
+	}
+
+	/**
+	 * makeMoves
+	 * remove the dead and move the others, in the tiles of a color,
+	 * in order, and clear their delta[] cells.
+	 */
+	protected void makeMoves ( int[] tiles ) {
+		for ( int k = 0; k < tiles.length; ++k ) {
+			int t = tiles[k];
+			for ( int a = tileStart[t]; a < tileStart[t+1]; ++a ) {
+				int i = order[a];
+				if ( dies[i] ) {
+					delta[ ants.getY( i ) * xSize + ants.getX( i ) ] = 0;
+					model.removeAntFromModel( i );
+				}
+				else if ( moves[i] ) {
+					delta[ ants.getY( i ) * xSize + ants.getX( i ) ] = 0;
+					delta[ targetY[i] * xSize + targetX[i] ] = 0;
+					world.moveObjectTo( ants.load( i ), targetX[i], targetY[i] );
+					ants.store( i );
+				}
+			}
+		}
+	}
+
+	protected boolean isOpen ( int x, int y ) {
+		int d = delta[ y * xSize + x ];
+		return ( d == 0 ) ? world.isOpen( x, y ) : d < 0;
+	}
+
+	// the world's mask, changed where delta[] says a cell was emptied or taken
+	protected int getOpenNeighborMask ( int x, int y ) {
+		int mask = world.getOpenNeighborMask( x, y );
+		if ( nbhd.isInterior( x, y ) ) {
+			int center = y * xSize + x;
+			for ( int k = 0; k < 8; ++k ) {
+				int d = delta[ center + maskOffset[k] ];
+				if ( d != 0 )
+					mask = ( d < 0 ) ? mask | ( 1 << k ) : mask & ~( 1 << k );
+			}
+		}
+		else {
+			for ( int k = 0; k < 8; ++k ) {
+				int d = delta[ world.ynorm( y + MooreNeighborhood.MASK_DY[k] ) * xSize
+							   + world.xnorm( x + MooreNeighborhood.MASK_DX[k] ) ];
+				if ( d != 0 )
+					mask = ( d < 0 ) ? mask | ( 1 << k ) : mask & ~( 1 << k );
+			}
+		}
+		return mask;
+	}
+
+}
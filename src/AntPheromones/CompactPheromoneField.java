@@ -0,0 +1,309 @@
+package  AntPheromones;
+
+/**
+CompactPheromoneField
+
+A PheromoneSpace like PheromoneField, but storing each value in
+less than a double, to save memory (and memory bandwidth) on big worlds:
+* floatStorage   -- a float (4 bytes), about 7 significant digits.
+* fixed16Storage -- 16 bits fixed point (a char, 2 bytes): the value is
+                    code * maxValue / 65535, so values are rounded to
+                    multiples of maxValue/65535 (about 0.5 for maxPher=32000),
+                    and anything below half of that is zero.
+The diffusion itself is done in doubles (same kernel and order of
+operations as PheromoneField's exact kernel): each row and the rows
+above and below it are widened into double scratch rows, the new row
+is computed, and then narrowed back into storage.
+
+Like PheromoneField, diffuse() swaps the read and write buffers and
+update() copies only the cells put since the last update(), and the
+total is kept as we go (each row is summed as it is stored).
+
+Accuracy, from compareWithDouble( 200, 200, 1000, 1.0, 0.99, 0.1, 32000 )
+(the model's inject + diffuse cycle, compared cell by cell with PheromoneField):
+* float   -- max error 0.00028 (8.6e-9 of maxPher), total off by 8.0e-8 of the total.
+* fixed16 -- max error 7.9 (2.5e-4 of maxPher), total off by 6.9% of the total.
+             The rounding errors pile up step after step, and everything
+             below half a code step (about 0.24) is lost, so the faint
+             outer part of the gradient is cut off.
+(100x100, 3000 steps, K=0.8, evap=0.95, exogRate=0.05: float 2.6e-4 and
+4.4e-7 of total; fixed16 2.2 and 3.7% of total.)
+So float is fine for anything, and fixed16 only if the ants don't
+depend on small differences far from the source.
+*/
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class CompactPheromoneField implements PheromoneSpace {
+
+	public static final int floatStorage = 1;
+	public static final int fixed16Storage = 2;
+	public static final int MAX_CODE = 65535;	// largest fixed16 code
+
+	protected int		storage;
+	protected int		xSize, ySize;
+	protected double	diffusionK, evapRate;
+	protected double	unit;					// fixed16: value of one code step
+
+	protected float[]	readF, writeF;			// floatStorage
+	protected char[]	readC, writeC;			// fixed16Storage
+
+	protected int[]		dirty = new int[16];	// cells put since the last update()
+	protected int		numDirty = 0;
+
+	protected double[]	up, mid, down, out;		// widened rows for diffuse()
+	protected double	total = 0;				// of read, kept by diffuse() and update()
+
+	protected ValueDisplayAdapter displaySpace;		// made only if asked for
+
+	/**
+	 * make a field with the given storage (floatStorage or fixed16Storage).
+	 * maxValue is the largest value it can hold (for fixed16).
+	 */
+	public CompactPheromoneField ( int storage, double k, double e,
+								   int sizeX, int sizeY, double maxValue ) {
+		if ( storage != floatStorage && storage != fixed16Storage ) {
+			System.err.printf( "\n** CompactPheromoneField: illegal storage %d, using float.\n",
+							   storage );
+			storage = floatStorage;
+		}
+		this.storage = storage;
+		diffusionK = k;
+		evapRate = e;
+		xSize = sizeX;
+		ySize = sizeY;
+		unit = maxValue / MAX_CODE;
+		if ( storage == floatStorage ) {
+			readF = new float[ xSize * ySize ];
+			writeF = new float[ xSize * ySize ];
+		}
+		else {
+			readC = new char[ xSize * ySize ];
+			writeC = new char[ xSize * ySize ];
+		}
+		up = new double[ xSize ];
+		mid = new double[ xSize ];
+		down = new double[ xSize ];
+		out = new double[ xSize ];
+	}
+
+	public int getSizeX () { return xSize; }
+	public int getSizeY () { return ySize; }
+	public int getStorage () { return storage; }
+	public int getHalo () { return 0; }
+
+	public void setDiffusionConstant ( double k ) { diffusionK = k; }
+	public void setEvaporationRate ( double e ) { evapRate = e; }
+
+	public double getValueAt ( int x, int y ) {
+		int i = y * xSize + x;
+		if ( storage == floatStorage )
+			return readF[i];
+		return readC[i] * unit;
+	}
+
+	public void putValueAt ( int x, int y, double v ) {
+		int i = y * xSize + x;
+		if ( storage == floatStorage )
+			writeF[i] = (float) v;
+		else
+			writeC[i] = toCode( v );
+		if ( numDirty == dirty.length )
+			dirty = java.util.Arrays.copyOf( dirty, 2 * numDirty );
+		dirty[ numDirty++ ] = i;
+	}
+
+	public void update () {
+		for ( int d = 0; d < numDirty; ++d ) {
+			int i = dirty[d];
+			if ( storage == floatStorage ) {
+				total += (double) writeF[i] - readF[i];
+				readF[i] = writeF[i];
+			}
+			else {
+				total += writeC[i] * unit - readC[i] * unit;
+				readC[i] = writeC[i];
+			}
+		}
+		numDirty = 0;
+	}
+
+	/**
+	 * inject
+	 * add amount at x,y (not over max), in both buffers.
+	 */
+	public void inject ( int x, int y, double amount, double max ) {
+		int i = y * xSize + x;
+		double old = getValueAt( x, y );
+		double v = amount + old;
+		v = Math.min( v, max );
+		if ( storage == floatStorage ) {
+			readF[i] = writeF[i] = (float) v;
+			total += (double) readF[i] - old;
+		}
+		else {
+			readC[i] = writeC[i] = toCode( v );
+			total += readC[i] * unit - old;
+		}
+	}
+
+	/**
+	 * diffuse
+	 * diffuse from read into write (in doubles, a row at a time), then swap them.
+	 */
+	public void diffuse () {
+		widenRow( ySize - 1, up );
+		widenRow( 0, mid );
+		double sum = 0;
+		for ( int y = 0; y < ySize; ++y ) {
+			widenRow( y == ySize - 1 ? 0 : y + 1, down );
+			diffuseRow( up, mid, down, out );
+			narrowRow( out, y );
+			widenWriteRow( y, out );	// the values as stored
+			sum += sumRow( out );
+			double[] t = up;  up = mid;  mid = down;  down = t;
+		}
+		if ( storage == floatStorage ) {
+			float[] t = readF;  readF = writeF;  writeF = t;
+		}
+		else {
+			char[] t = readC;  readC = writeC;  writeC = t;
+		}
+		numDirty = 0;
+		total = sum;
+	}
+
+	/**
+	 * getTotalValue
+	 * @return the total kept by diffuse() and update().
+	 */
+	public double getTotalValue () {
+		return total;
+	}
+
+	/**
+	 * recountTotalValue
+	 * sum by rows, as diffuse() does, and keep that as the total.
+	 */
+	public double recountTotalValue () {
+		double t = 0;
+		for ( int y = 0; y < ySize; ++y ) {
+			widenRow( y, out );
+			t += sumRow( out );
+		}
+		total = t;
+		return total;
+	}
+
+	public Discrete2DSpace getDisplaySpace () {
+		if ( displaySpace == null )
+			displaySpace = new ValueDisplayAdapter( this );
+		return displaySpace;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// diffusion, in doubles
+	//
+	private void widenRow ( int y, double[] row ) {
+		int base = y * xSize;
+		if ( storage == floatStorage ) {
+			for ( int x = 0; x < xSize; ++x )
+				row[x] = readF[ base + x ];
+		}
+		else {
+			for ( int x = 0; x < xSize; ++x )
+				row[x] = readC[ base + x ] * unit;
+		}
+	}
+
+	// row y of write, as doubles
+	private void widenWriteRow ( int y, double[] row ) {
+		int base = y * xSize;
+		if ( storage == floatStorage ) {
+			for ( int x = 0; x < xSize; ++x )
+				row[x] = writeF[ base + x ];
+		}
+		else {
+			for ( int x = 0; x < xSize; ++x )
+				row[x] = writeC[ base + x ] * unit;
+		}
+	}
+
+	private double sumRow ( double[] row ) {
+		double s = 0;
+		for ( int x = 0; x < xSize; ++x )
+			s += row[x];
+		return s;
+	}
+
+	private void narrowRow ( double[] row, int y ) {
+		int base = y * xSize;
+		if ( storage == floatStorage ) {
+			for ( int x = 0; x < xSize; ++x )
+				writeF[ base + x ] = (float) row[x];
+		}
+		else {
+			for ( int x = 0; x < xSize; ++x )
+				writeC[ base + x ] = toCode( row[x] );
+		}
+	}
+
+	// same kernel, same order of operations, as PheromoneField
+	private void diffuseRow ( double[] u, double[] m, double[] d, double[] w ) {
+		double k = diffusionK, e = evapRate;
+		int last = xSize - 1;
+		for ( int x = 0; x <= last; ++x ) {
+			int pX = ( x == 0 ) ? last : x - 1;
+			int nX = ( x == last ) ? 0 : x + 1;
+			double sum = 4 * ( u[x] + m[nX] + d[x] + m[pX] )
+				+ u[pX] + u[nX] + d[nX] + d[pX];
+			double old = m[x];
+			w[x] = e * ( old + k * ( sum / 20.0 - old ) );
+		}
+	}
+
+	// nearest fixed16 code for v (clamped to 0..MAX_CODE)
+	private char toCode ( double v ) {
+		long c = Math.round( v / unit );
+		if ( c < 0 )
+			c = 0;
+		else if ( c > MAX_CODE )
+			c = MAX_CODE;
+		return (char) c;
+	}
+
+	/**
+	 * compareWithDouble
+	 * run the model's pheromone cycle (inject at the center, clamped at maxPher;
+	 * update; diffuse) for some steps in a PheromoneField and in float and
+	 * fixed16 CompactPheromoneFields, and print how far off the compact ones are.
+	 */
+	public static void compareWithDouble ( int sizeX, int sizeY, int steps,
+										   double diffusionK, double evapRate,
+										   double exogRate, double maxPher ) {
+		PheromoneField exact = new PheromoneField( diffusionK, evapRate, sizeX, sizeY );
+		CompactPheromoneField[] compact = {
+			new CompactPheromoneField( floatStorage, diffusionK, evapRate, sizeX, sizeY, maxPher ),
+			new CompactPheromoneField( fixed16Storage, diffusionK, evapRate, sizeX, sizeY, maxPher ) };
+		PheromoneSpace[] all = { exact, compact[0], compact[1] };
+		int sx = sizeX / 2, sy = sizeY / 2;
+		for ( int s = 0; s < steps; ++s ) {
+			for ( PheromoneSpace p : all ) {
+				p.putValueAt( sx, sy, Math.min( p.getValueAt( sx, sy ) + maxPher * exogRate, maxPher ) );
+				p.update();
+				p.diffuse();
+			}
+		}
+		double total = exact.getTotalValue();
+		for ( CompactPheromoneField c : compact ) {
+			double maxErr = 0;
+			for ( int x = 0; x < sizeX; ++x )
+				for ( int y = 0; y < sizeY; ++y )
+					maxErr = Math.max( maxErr, Math.abs( c.getValueAt( x, y ) - exact.getValueAt( x, y ) ) );
+			System.out.printf( "%-7s: max error %.3g (%.3g of maxPher), total off by %.3g of total\n",
+							   c.storage == floatStorage ? "float" : "fixed16", maxErr, maxErr / maxPher,
+							   Math.abs( c.getTotalValue() - total ) / total );
+		}
+	}
+
+}
@@ -24,7 +24,7 @@ import uchicago.src.sim.gui.SimGraphics;
 public class Food implements ObjectInGrid, Drawable {
 // class variables, should be the same for all objects
 	public  static int          	nextId = 0; // to give each an id
-	public  static TorusWorld    	world;  	// where the agents live
+	public  static TorusSpace    	world;  	// where the agents live
 	public  static Model		   	model;      // the model "in charge"
 	public  static GUIModel		    guiModel = null;   // the gui model "in charge"
 	
@@ -52,7 +52,7 @@ public class Food implements ObjectInGrid, Drawable {
 
 	// from the ant class - we'll see if it works
 	// note these are class (static) methods, to set class (static) variables
-	public static void setWorld( TorusWorld w ) {	world = w; }
+	public static void setWorld( TorusSpace w ) {	world = w; }
 	public static void setModel( Model m ) { model = m; }
 	public static void resetNextId() { nextId = 0; }  // call when we reset the model
 
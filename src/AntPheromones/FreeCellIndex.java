@@ -0,0 +1,86 @@
+package  AntPheromones;
+
+/**
+FreeCellIndex
+
+Keeps track of which cells of a world are empty, so we can pick
+a random empty cell in O(1) time no matter how full the world is.
+
+Cells are named by their flat index (y*xSize + x).
+We keep all the cell indexes in one array, cells[], arranged
+so that the first numFree of them are the free cells, and position[]
+tells where each cell is in cells[].  Marking a cell occupied (or free)
+just swaps it across the free/occupied boundary.
+
+The world must call markOccupied/markFree every time a cell
+changes, i.e., on every put, move and remove.
+*/
+
+public class FreeCellIndex {
+
+	protected int[]		cells;		// all cell indexes, free ones first
+	protected int[]		position;	// cell index -> where it is in cells[]
+	protected int		numFree;
+
+	/**
+	 * make an index of numCells cells, all of them free.
+	 */
+	public FreeCellIndex ( int numCells ) {
+		cells = new int[ numCells ];
+		position = new int[ numCells ];
+		for ( int i = 0; i < numCells; ++i ) {
+			cells[i] = i;
+			position[i] = i;
+		}
+		numFree = numCells;
+	}
+
+	public int getNumFree () { return numFree; }
+
+	public boolean isFree ( int cell ) {
+		return position[cell] < numFree;
+	}
+
+	/**
+	 * getFreeCell
+	 * @return the i-th free cell, 0 <= i < numFree (in no particular order)
+	 */
+	public int getFreeCell ( int i ) {
+		return cells[i];
+	}
+
+	public void markOccupied ( int cell ) {
+		int p = position[cell];
+		if ( p >= numFree )		// already occupied
+			return;
+		swap( p, --numFree );
+	}
+
+	public void markFree ( int cell ) {
+		int p = position[cell];
+		if ( p < numFree )		// already free
+			return;
+		swap( p, numFree++ );
+	}
+
+	/**
+	 * getRandomFreeCell
+	 * @return a uniformly chosen free cell, or -1 if there are none.
+	 */
+	public int getRandomFreeCell () {
+		if ( numFree == 0 )
+			return -1;
+		return cells[ Model.getUniformIntFromTo( 0, numFree - 1 ) ];
+	}
+
+	// swap the cells at positions p and q in cells[]
+	private void swap ( int p, int q ) {
+		int a = cells[p];
+		int b = cells[q];
+		cells[p] = b;
+		cells[q] = a;
+		position[b] = p;
+		position[a] = q;
+	}
+
+}
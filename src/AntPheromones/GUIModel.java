@@ -140,13 +140,14 @@ public class GUIModel extends Model {
 		modelManipulator.setEnabled( true );
 		
 		// create mapper object, from 2D GridWorld to the display surface
-		worldDisplay = new Object2DDisplay( world );
+		// (the world gives us a Repast view of itself, whatever its worldType)
+		worldDisplay = new Object2DDisplay( world.getDisplaySpace() );
 		
 		// let's try this with food
-		foodDisplay = new Object2DDisplay( world );
+		foodDisplay = new Object2DDisplay( world.getDisplaySpace() );
 
 		// speed up display of ants -- just display them!
-        worldDisplay.setObjectList( antList );
+        worldDisplay.setObjectList( antPop.getAnts() );
 
 		foodDisplay.setObjectList( foodList );
 
@@ -157,7 +158,7 @@ public class GUIModel extends Model {
 		// The Value2DDisplay does this mapping with the parameters m,c:
 		//   int color index = (state / m) + c
 		// so we want m = truncate( maxValue / maxColorIndex ) 
-		pSpaceDisplay = new Value2DDisplay( pSpace, pherColorMap );
+		pSpaceDisplay = new Value2DDisplay( pSpace.getDisplaySpace(), pherColorMap );
 		int m = (int) (maxPher / colorMapMax);
 		if ( rDebug > 1 )
 			System.out.printf( "  -> pSpaceDisplay scaling m = %d.\n", m );
@@ -271,7 +272,7 @@ public class GUIModel extends Model {
 	// setBugColorBasedOnProbRandMove
 	*/
 	public void setBugColorBasedOnProbRandMove() {
-		for ( Ant bug : antList )
+		for ( Ant bug : antPop.getAnts() )
 			bug.setBugColorFromPRM();
 	}
 	
@@ -0,0 +1,53 @@
+package  AntPheromones;
+
+/**
+GridDisplayAdapter
+
+Lets the Repast Object2DDisplay (and probes) look at a TorusSpace
+that is not itself an Object2DGrid, e.g., an IntTorusWorld.
+All object lookups are passed on to the real world, and it has no
+cells of its own, so it costs nothing per cell.
+
+getMatrix() returns null: there is no Repast matrix behind the world,
+so the displays using this must draw from an object list
+(Object2DDisplay.setObjectList, as GUIModel does).
+*/
+
+import java.awt.Dimension;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class GridDisplayAdapter implements Discrete2DSpace {
+
+	protected TorusSpace world;
+
+	public GridDisplayAdapter ( TorusSpace w ) {
+		world = w;
+	}
+
+	public int getSizeX () { return world.getSizeX(); }
+	public int getSizeY () { return world.getSizeY(); }
+	public Dimension getSize () { return new Dimension( getSizeX(), getSizeY() ); }
+
+	public Object getObjectAt ( int x, int y ) {
+		return world.getObjectAt( x, y );
+	}
+
+	public void putObjectAt ( int x, int y, Object obj ) {
+		world.putObjectAt( x, y, obj );
+	}
+
+	// as Object2DGrid: the value of a Number in the cell (else 0)
+	public double getValueAt ( int x, int y ) {
+		Object obj = world.getObjectAt( x, y );
+		return ( obj instanceof Number ) ? ( (Number) obj ).doubleValue() : 0.0;
+	}
+
+	public void putValueAt ( int x, int y, double v ) {
+		world.putObjectAt( x, y, Double.valueOf( v ) );
+	}
+
+	public BaseMatrix getMatrix () { return null; }
+
+}
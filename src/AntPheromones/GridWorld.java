@@ -9,8 +9,8 @@ package  AntPheromones;
 * This provides these methods:
 * a) moveObject 
 *    check the "physics" and moves (or not) an object 
-* b) addToRandomLocationInWorld -- a version
-*    that works best for worlds with density < 0.8 or so.
+* b) placeAtRandomLocation -- picks from an index of the empty cells,
+*    so it takes the same time at any density.
 * c) getOpenNeighborLocations ( int x, int y )
 *    return an arraylist of points for open cells around x,y
 *
@@ -32,9 +32,58 @@ public class GridWorld extends Object2DGrid {
 	/** the Model that is using this world. */
 	public Model theModel;
 
+	/** the empty cells, kept up to date by putObjectAt. */
+	protected FreeCellIndex freeCells;
+
+	/** others who want to know when cells fill or empty. */
+	protected OccupancyListener[] listeners = new OccupancyListener[0];
+
 	public GridWorld(int sizeX, int sizeY, Model aModel) {
 		super(sizeX, sizeY);
 		theModel = aModel;
+		freeCells = new FreeCellIndex( sizeX * sizeY );
+	}
+
+	/**
+	 * putObjectAt
+	 * put obj in x,y as Object2DGrid does (null empties the cell),
+	 * and keep the index of free cells up to date.
+	 * NB: all changes to the world go through here (moves too).
+	 */
+	public void putObjectAt(int x, int y, Object obj) {
+		boolean wasEmpty = ( getObjectAt( x, y ) == null );
+		super.putObjectAt( x, y, obj );
+		if ( freeCells == null || wasEmpty == ( obj == null ) )
+			return;  // no change in occupancy
+
+		if ( obj == null ) {
+			freeCells.markFree( y * xSize + x );
+			for ( OccupancyListener l : listeners )
+				l.cellEmptied( x, y );
+		}
+		else {
+			freeCells.markOccupied( y * xSize + x );
+			for ( OccupancyListener l : listeners )
+				l.cellOccupied( x, y );
+		}
+	}
+
+	public void addOccupancyListener( OccupancyListener listener ) {
+		listeners = java.util.Arrays.copyOf( listeners, listeners.length + 1 );
+		listeners[ listeners.length - 1 ] = listener;
+	}
+
+	public void removeOccupancyListener( OccupancyListener listener ) {
+		OccupancyListener[] newListeners = new OccupancyListener[ listeners.length ];
+		int n = 0;
+		for ( OccupancyListener l : listeners )
+			if ( l != listener )
+				newListeners[n++] = l;
+		listeners = java.util.Arrays.copyOf( newListeners, n );
+	}
+
+	public int getNumFreeCells() {
+		return freeCells.getNumFree();
 	}
 
 	/**
@@ -44,34 +93,21 @@ public class GridWorld extends Object2DGrid {
 	 * @return boolean placed or not place the object in a randomly selected
 	 *         empty location tell the object to set its x,y accordingly
 	 * 
-	 *         NB: if it can't find a spot after X*Y trials, it gives up and
-	 *         returns (added=) false. Works best for densities < 0.8 or so.
+	 *         NB: picks uniformly from the index of free cells, so it is O(1)
+	 *         at any density, and only returns false if the world is full.
 	 */
 
 	public boolean placeAtRandomLocation(ObjectInGrid obj) {
-		int x = 0, y = 0; // candidate x,y locations
-		int maxTrials = xSize * ySize; // only try this many times
-		int numTrials = 0; // haven't tried to look at any cells yet
-		Boolean foundOpenCell = false; // not found empty cell (so not added)
-
-		// find a randomly selected empty location, or give up if takes too long
-		while (!foundOpenCell && numTrials < maxTrials) {
-			x = Model.getUniformIntFromTo(0, xSize - 1);
-			y = Model.getUniformIntFromTo(0, ySize - 1);
-			if ( getObjectAt(x, y) == null ) // found empty cell!
-				foundOpenCell = true;
-			else
-				// still need to look
-				++numTrials; //  increment number of times we tried
-		}
-
-		if ( foundOpenCell ) { // if true, we can:
-			putObjectAt( x, y, obj ); // put obj in world at that location
-			obj.setX( x ); // tell the object where we put it
-			obj.setY( y );
-		}
+		int cell = freeCells.getRandomFreeCell();
+		if ( cell < 0 )  // no empty cells at all
+			return false;
 
-		return foundOpenCell;
+		int x = cell % xSize;
+		int y = cell / xSize;
+		putObjectAt( x, y, obj ); // put obj in world at that location
+		obj.setX( x ); // tell the object where we put it
+		obj.setY( y );
+		return true;
 	}
 
 	/**
@@ -0,0 +1,308 @@
+package  AntPheromones;
+
+/**
+IntTorusWorld
+
+A torus world of discrete cells, like TorusWorld, but not built over
+the Repast Object2DGrid.  Instead each cell is one entry in a flat int[]
+that holds the id of the object in the cell (or EMPTY), and the ids
+are looked up in a table of ObjectInGrid objects.
+Cell x,y is stored at index  y * xSize + x.
+
+So "is this cell open?" is just an int compare, with no boxed
+object lookups, and the grid takes 4 bytes per cell.
+
+The ids are assigned by the world when an object is put in it,
+and recycled when it is taken out (so they are NOT the Ant/Food ids).
+
+The empty cells are also kept in a FreeCellIndex, so
+placeAtRandomLocation is O(1) at any density.
+
+Movement rules (and the odd bits) are the same as TorusWorld:
+* moveObject wraps dx,dy moves around the torus
+* moveObjectTo expects x,y already in the world, else it returns false
+* getNumberOfNeighbors does not wrap (as Object2DGrid.getMooreNeighbors)
+
+For the GUI, getDisplaySpace() returns a GridDisplayAdapter.
+*/
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class IntTorusWorld implements TorusSpace {
+
+	public static final int EMPTY = -1;  // id stored in empty cells
+
+	/** the Model that is using this world. */
+	public Model theModel;
+
+	protected int		xSize, ySize;
+	protected int[]		cells;			// id of the object in each cell, or EMPTY
+	protected ObjectInGrid[] objects;	// id -> object in the world
+	protected int[]		freeIds;		// stack of ids we can reuse
+	protected int		numFreeIds = 0;
+	protected int		nextNewId = 0;  // next never-used id
+	protected int		numObjects = 0;
+	protected FreeCellIndex freeCells;	// the EMPTY cells
+	protected OccupancyListener[] listeners = new OccupancyListener[0];
+
+	protected int[]		maskOffset = new int[8];	// flat offsets of the 8 neighbors
+
+	protected GridDisplayAdapter displaySpace;   // made only if asked for
+
+	public IntTorusWorld ( int sizeX, int sizeY, Model aModel ) {
+		xSize = sizeX;
+		ySize = sizeY;
+		theModel = aModel;
+		cells = new int[ xSize * ySize ];
+		java.util.Arrays.fill( cells, EMPTY );
+		freeCells = new FreeCellIndex( xSize * ySize );
+		for ( int k = 0; k < 8; ++k )
+			maskOffset[k] = MooreNeighborhood.MASK_DY[k] * xSize + MooreNeighborhood.MASK_DX[k];
+		objects = new ObjectInGrid[ 64 ];
+		freeIds = new int[ 64 ];
+	}
+
+	public int getSizeX () { return xSize; }
+	public int getSizeY () { return ySize; }
+	public int getNumObjects () { return numObjects; }
+	public int getNumFreeCells () { return freeCells.getNumFree(); }
+
+	/**
+	 * cellIndex
+	 * @return the index into cells[] for x,y (which must be in the world).
+	 */
+	public int cellIndex ( int x, int y ) {
+		return y * xSize + x;
+	}
+
+	/**
+	 * isOpen
+	 * @return true if the (in world) cell x,y is empty.
+	 */
+	public boolean isOpen ( int x, int y ) {
+		return cells[ y * xSize + x ] == EMPTY;
+	}
+
+	public Object getObjectAt ( int x, int y ) {
+		int id = cells[ y * xSize + x ];
+		if ( id == EMPTY )
+			return null;
+		return objects[ id ];
+	}
+
+	/**
+	 * putObjectAt
+	 * put obj in cell x,y, or empty the cell if obj is null.
+	 * Whatever was in the cell before is no longer in the world.
+	 * NB: obj must be an ObjectInGrid (or null).
+	 */
+	public void putObjectAt ( int x, int y, Object obj ) {
+		int index = y * xSize + x;
+		boolean wasEmpty = ( cells[index] == EMPTY );
+		if ( !wasEmpty )
+			releaseId( cells[index] );
+		if ( obj == null ) {
+			cells[index] = EMPTY;
+			if ( !wasEmpty ) {
+				freeCells.markFree( index );
+				for ( OccupancyListener l : listeners )
+					l.cellEmptied( x, y );
+			}
+		}
+		else {
+			cells[index] = assignId( (ObjectInGrid) obj );
+			if ( wasEmpty ) {
+				freeCells.markOccupied( index );
+				for ( OccupancyListener l : listeners )
+					l.cellOccupied( x, y );
+			}
+		}
+	}
+
+	public void addOccupancyListener ( OccupancyListener listener ) {
+		listeners = java.util.Arrays.copyOf( listeners, listeners.length + 1 );
+		listeners[ listeners.length - 1 ] = listener;
+	}
+
+	public void removeOccupancyListener ( OccupancyListener listener ) {
+		OccupancyListener[] newListeners = new OccupancyListener[ listeners.length ];
+		int n = 0;
+		for ( OccupancyListener l : listeners )
+			if ( l != listener )
+				newListeners[n++] = l;
+		listeners = java.util.Arrays.copyOf( newListeners, n );
+	}
+
+	/**
+	 * placeAtRandomLocation
+	 * same as GridWorld: pick from the free cell index, false only if full.
+	 */
+	public boolean placeAtRandomLocation ( ObjectInGrid obj ) {
+		int cell = freeCells.getRandomFreeCell();
+		if ( cell < 0 )
+			return false;
+
+		int x = cell % xSize;
+		int y = cell / xSize;
+		putObjectAt( x, y, obj );
+		obj.setX( x );
+		obj.setY( y );
+		return true;
+	}
+
+	/**
+	 * moveObject
+	 * try to move obj by dX,dY (wrapped around the torus) if target is empty.
+	 */
+	public boolean moveObject ( ObjectInGrid obj, int dX, int dY ) {
+		int newX = xnorm( obj.getX() + dX );
+		int newY = ynorm( obj.getY() + dY );
+		return moveIfOpen( obj, newX, newY );
+	}
+
+	/**
+	 * moveObjectTo
+	 * try to move obj to newX,newY; false if that is off the world or occupied.
+	 */
+	public boolean moveObjectTo ( ObjectInGrid obj, int newX, int newY ) {
+		if ( newX < 0 || newY < 0 || newX >= xSize || newY >= ySize ) {
+			return false;
+		}
+		return moveIfOpen( obj, newX, newY );
+	}
+
+	// the object keeps its id, so we just move the id from cell to cell.
+	private boolean moveIfOpen ( ObjectInGrid obj, int newX, int newY ) {
+		int newIndex = newY * xSize + newX;
+		if ( cells[newIndex] != EMPTY )
+			return false;
+
+		int oldX = obj.getX(), oldY = obj.getY();
+		int oldIndex = oldY * xSize + oldX;
+		cells[newIndex] = cells[oldIndex];
+		cells[oldIndex] = EMPTY;
+		freeCells.markOccupied( newIndex );
+		freeCells.markFree( oldIndex );
+		for ( OccupancyListener l : listeners ) {
+			l.cellEmptied( oldX, oldY );
+			l.cellOccupied( newX, newY );
+		}
+		obj.setX( newX );
+		obj.setY( newY );
+		return true;
+	}
+
+	/**
+	 * getOpenNeighborLocations
+	 * same as TorusWorld: Points (torus normalized) for each open cell
+	 * in the Moore neighborhood, including x,y if its open.
+	 */
+	public ArrayList<Point> getOpenNeighborLocations ( int x, int y ) {
+		ArrayList<Point> ptList = new ArrayList<Point>();
+		MooreNeighborhood nbhd = MooreNeighborhood.get( xSize, ySize, 1, false );
+		if ( nbhd.isInterior( x, y ) ) {
+			int center = y * xSize + x;
+			for ( int k = 0; k < nbhd.size; ++k ) {
+				if ( cells[ center + nbhd.offset[k] ] == EMPTY )
+					ptList.add( new Point( x + nbhd.dx[k], y + nbhd.dy[k] ) );
+			}
+		}
+		else {
+			for ( int k = 0; k < nbhd.size; ++k ) {
+				int txnorm = nbhd.wrapX( x, k );
+				int tynorm = nbhd.wrapY( y, k );
+				if ( cells[ tynorm * xSize + txnorm ] == EMPTY )
+					ptList.add( new Point( txnorm, tynorm ) );
+			}
+		}
+		return ptList;
+	}
+
+	/**
+	 * getOpenNeighborMask
+	 * bit k set if the k-th neighbor (see MooreNeighborhood.MASK_DX) is EMPTY.
+	 */
+	public int getOpenNeighborMask ( int x, int y ) {
+		int mask = 0;
+		if ( x > 0 && y > 0 && x < xSize - 1 && y < ySize - 1 ) {
+			int center = y * xSize + x;
+			for ( int k = 0; k < 8; ++k ) {
+				if ( cells[ center + maskOffset[k] ] == EMPTY )
+					mask |= 1 << k;
+			}
+		}
+		else {
+			for ( int k = 0; k < 8; ++k ) {
+				int tx = xnorm( x + MooreNeighborhood.MASK_DX[k] );
+				int ty = ynorm( y + MooreNeighborhood.MASK_DY[k] );
+				if ( cells[ ty * xSize + tx ] == EMPTY )
+					mask |= 1 << k;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * getNumberOfNeighbors
+	 * count occupied cells within d of x,y, not counting x,y.
+	 * NB: like Object2DGrid.getMooreNeighbors this does not wrap around.
+	 */
+	public int getNumberOfNeighbors ( int x, int y, int d ) {
+		int minX = Math.max( 0, x - d ), maxX = Math.min( xSize - 1, x + d );
+		int minY = Math.max( 0, y - d ), maxY = Math.min( ySize - 1, y + d );
+		int count = 0;
+		for ( int ty = minY; ty <= maxY; ++ty ) {
+			int row = ty * xSize;
+			for ( int tx = minX; tx <= maxX; ++tx ) {
+				if ( cells[ row + tx ] != EMPTY )
+					++count;
+			}
+		}
+		if ( x >= 0 && x < xSize && y >= 0 && y < ySize && cells[ y * xSize + x ] != EMPTY )
+			--count;  // don't count the center
+		return count;
+	}
+
+	public int xnorm ( int x ) {
+		return MooreNeighborhood.wrap( x, xSize );
+	}
+
+	public int ynorm ( int y ) {
+		return MooreNeighborhood.wrap( y, ySize );
+	}
+
+	public Discrete2DSpace getDisplaySpace () {
+		if ( displaySpace == null )
+			displaySpace = new GridDisplayAdapter( this );
+		return displaySpace;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// the id table
+	//
+	private int assignId ( ObjectInGrid obj ) {
+		int id;
+		if ( numFreeIds > 0 )
+			id = freeIds[ --numFreeIds ];
+		else {
+			id = nextNewId++;
+			if ( id == objects.length )
+				objects = java.util.Arrays.copyOf( objects, 2 * objects.length );
+		}
+		objects[id] = obj;
+		++numObjects;
+		return id;
+	}
+
+	private void releaseId ( int id ) {
+		objects[id] = null;
+		if ( numFreeIds == freeIds.length )
+			freeIds = java.util.Arrays.copyOf( freeIds, 2 * freeIds.length );
+		freeIds[ numFreeIds++ ] = id;
+		--numObjects;
+	}
+
+}
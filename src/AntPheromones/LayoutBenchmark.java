@@ -0,0 +1,136 @@
+package  AntPheromones;
+
+/**
+LayoutBenchmark
+
+A stand-alone timing test of the CellLayouts, for the access
+pattern the ants make: many ants clustered around the pheromone
+source, each step each one
+* looks at the pheromone in its radius 2 Moore neighborhood (by columns,
+  as Ant.findMostPheromoneOpenNeighborCell does)
+* looks at the 8 cells around it to see which are open
+* moves one cell at random (if open)
+on an int[] occupancy grid and a double[] pheromone field of the
+given size, both stored in the layout being tested.
+It also times one full sweep over the field (what diffusion does).
+
+Usage:
+   java AntPheromones.LayoutBenchmark [sizeX sizeY numAnts steps]
+(defaults 4096 4096 200000 20).
+
+It reports millions of cell probes per second for each layout.
+Java can't count cache misses itself; to see those, run it under
+a profiler, e.g.,  perf stat -e cache-references,cache-misses java ...
+once for each layout (add a 5th argument, the layout number).
+*/
+
+import java.util.Random;
+
+public class LayoutBenchmark {
+
+	public static void main ( String[] args ) {
+		int sizeX = args.length > 0 ? Integer.parseInt( args[0] ) : 4096;
+		int sizeY = args.length > 1 ? Integer.parseInt( args[1] ) : 4096;
+		int numAnts = args.length > 2 ? Integer.parseInt( args[2] ) : 200000;
+		int steps = args.length > 3 ? Integer.parseInt( args[3] ) : 20;
+		int onlyLayout = args.length > 4 ? Integer.parseInt( args[4] ) : -1;
+
+		System.out.printf( "# LayoutBenchmark: %d x %d, %d ants, %d steps\n",
+						   sizeX, sizeY, numAnts, steps );
+		System.out.printf( "# %-14s %12s %12s %12s\n", "layout", "ant Mprobe/s",
+						   "sweep Mcell/s", "checksum" );
+		for ( int pass = 0; pass < 2; ++pass ) {	// first pass warms up the JIT
+			for ( int type = 0; type <= 2; ++type ) {
+				if ( onlyLayout >= 0 && type != onlyLayout )
+					continue;
+				run( new CellLayout( type, sizeX, sizeY ), numAnts, steps, pass == 1 );
+			}
+		}
+	}
+
+	private static void run ( CellLayout layout, int numAnts, int steps, boolean report ) {
+		int sizeX = layout.xSize, sizeY = layout.ySize;
+		int[] occupied = new int[ layout.getNumCells() ];
+		double[] pher = new double[ layout.getNumCells() ];
+		Random rng = new Random( 17 );	// same ants and moves for every layout
+
+		// pheromone falls off from the center; ants clustered around it
+		int cx = sizeX / 2, cy = sizeY / 2;
+		for ( int y = 0; y < sizeY; ++y )
+			for ( int x = 0; x < sizeX; ++x )
+				pher[ layout.index( x, y ) ] = 32000.0 / ( 1 + Math.abs( x - cx ) + Math.abs( y - cy ) );
+		int[] ax = new int[ numAnts ], ay = new int[ numAnts ];
+		double spread = Math.min( sizeX, sizeY ) / 16.0;
+		for ( int a = 0; a < numAnts; ++a ) {
+			int x, y;
+			do {
+				x = wrap( cx + (int) ( rng.nextGaussian() * spread ), sizeX );
+				y = wrap( cy + (int) ( rng.nextGaussian() * spread ), sizeY );
+			} while ( occupied[ layout.index( x, y ) ] != 0 );
+			occupied[ layout.index( x, y ) ] = 1;
+			ax[a] = x;
+			ay[a] = y;
+		}
+
+		double checksum = 0;
+		long probes = 0;
+		long start = System.nanoTime();
+		for ( int s = 0; s < steps; ++s ) {
+			for ( int a = 0; a < numAnts; ++a ) {
+				int x = ax[a], y = ay[a];
+				double best = -1;
+				for ( int dx = -2; dx <= 2; ++dx ) {
+					int tx = wrap( x + dx, sizeX );
+					for ( int dy = -2; dy <= 2; ++dy ) {
+						double p = pher[ layout.index( tx, wrap( y + dy, sizeY ) ) ];
+						if ( p > best )
+							best = p;
+					}
+				}
+				int mask = 0;
+				for ( int k = 0; k < 8; ++k ) {
+					int tx = wrap( x + MooreNeighborhood.MASK_DX[k], sizeX );
+					int ty = wrap( y + MooreNeighborhood.MASK_DY[k], sizeY );
+					if ( occupied[ layout.index( tx, ty ) ] == 0 )
+						mask |= 1 << k;
+				}
+				probes += 25 + 8;
+				checksum += best;
+				int k = rng.nextInt( 8 );
+				if ( ( mask & ( 1 << k ) ) != 0 ) {
+					int nx = wrap( x + MooreNeighborhood.MASK_DX[k], sizeX );
+					int ny = wrap( y + MooreNeighborhood.MASK_DY[k], sizeY );
+					occupied[ layout.index( x, y ) ] = 0;
+					occupied[ layout.index( nx, ny ) ] = 1;
+					ax[a] = nx;
+					ay[a] = ny;
+				}
+			}
+		}
+		double antSecs = ( System.nanoTime() - start ) / 1e9;
+
+		// one sweep, reading the 4 nearest neighbors of every cell
+		start = System.nanoTime();
+		double sum = 0;
+		for ( int y = 0; y < sizeY; ++y ) {
+			int pY = wrap( y - 1, sizeY ), nY = wrap( y + 1, sizeY );
+			for ( int x = 0; x < sizeX; ++x ) {
+				int pX = wrap( x - 1, sizeX ), nX = wrap( x + 1, sizeX );
+				sum += pher[ layout.index( x, pY ) ] + pher[ layout.index( nX, y ) ]
+					+ pher[ layout.index( x, nY ) ] + pher[ layout.index( pX, y ) ];
+			}
+		}
+		double sweepSecs = ( System.nanoTime() - start ) / 1e9;
+		checksum += sum;
+
+		if ( report )
+			System.out.printf( "  %-14s %12.1f %12.1f %12.6g\n", CellLayout.getName( layout.type ),
+							   probes / antSecs / 1e6, (double) sizeX * sizeY / sweepSecs / 1e6,
+							   checksum );
+	}
+
+	private static int wrap ( int v, int n ) {
+		return MooreNeighborhood.wrap( v, n );
+	}
+
+}
@@ -0,0 +1,99 @@
+package  AntPheromones;
+
+/**
+ListAntPopulation
+
+The AntPopulation the model has always used: an ArrayList of Ant objects.
+remove(i) and removeDead() keep the order of the rest, and shuffle() is the Repast
+SimUtilities.shuffle, so runs are the same as before there were
+AntPopulations.  The Ants removed go on a free list for newAnt().
+*/
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uchicago.src.sim.util.SimUtilities;
+
+public class ListAntPopulation implements AntPopulation {
+
+	protected ArrayList<Ant> ants;
+	protected boolean	anyDead = false;	// any ants marked dead (live false) since removeDead()
+	protected ArrayList<Ant> free;			// removed Ants, for newAnt() to reuse
+	protected int		numAntsAllocated = 0;
+
+	public ListAntPopulation ( int capacity ) {
+		ants = new ArrayList<Ant>( Math.max( 16, capacity ) );
+		free = new ArrayList<Ant>();
+	}
+
+	public int size () { return ants.size(); }
+
+	public Ant newAnt () {
+		int n = free.size();
+		if ( n == 0 ) {
+			++numAntsAllocated;
+			return new Ant();
+		}
+		Ant ant = free.remove( n - 1 );
+		ant.reset();
+		return ant;
+	}
+
+	public int getNumAntsAllocated () { return numAntsAllocated; }
+
+	public int add ( Ant ant ) {
+		ants.add( ant );
+		return ants.size() - 1;
+	}
+
+	public void remove ( int i ) {
+		free.add( ants.remove( i ) );
+	}
+
+	// the ant has usually set live false itself, as it died
+	public void markDead ( int i ) {
+		ants.get( i ).live = false;
+		anyDead = true;
+	}
+
+	public boolean isDead ( int i ) { return !ants.get( i ).live; }
+
+	public void removeDead () {
+		if ( !anyDead )
+			return;
+		int n = 0;
+		for ( int i = 0; i < ants.size(); ++i ) {
+			Ant ant = ants.get( i );
+			if ( ant.live )
+				ants.set( n++, ant );
+			else
+				free.add( ant );
+		}
+		ants.subList( n, ants.size() ).clear();
+		anyDead = false;
+	}
+
+	public Ant load ( int i ) { return ants.get( i ); }
+	public void store ( int i ) { }
+
+	public int getId ( int i ) { return ants.get( i ).id; }
+	public int getX ( int i ) { return ants.get( i ).x; }
+	public int getY ( int i ) { return ants.get( i ).y; }
+	public int getAge ( int i ) { return ants.get( i ).age; }
+	public double getWeight ( int i ) { return ants.get( i ).weight; }
+	public double getProbRandMove ( int i ) { return ants.get( i ).probRandMove; }
+	public double getProbDieCenter ( int i ) { return ants.get( i ).probDieCenter; }
+
+	public void incrementAges ( int incAge ) {
+		for ( Ant ant : ants )
+			ant.incrementAge( incAge );
+	}
+
+	public void shuffle () {
+		SimUtilities.shuffle( ants, uchicago.src.sim.util.Random.uniform );
+	}
+
+	public Ant getAnt ( int i ) { return ants.get( i ); }
+	public List<Ant> getAnts () { return ants; }
+
+}
@@ -8,7 +8,6 @@ package AntPheromones;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.awt.Point;
 import java.io.PrintWriter;
 
@@ -16,7 +15,6 @@ import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
 
 import uchicago.src.sim.engine.Schedule;
 import uchicago.src.sim.space.Diffuse2D;
-import uchicago.src.sim.util.SimUtilities;
 
 
 public class Model extends ModelParameters {
@@ -35,10 +33,11 @@ public class Model extends ModelParameters {
 	public int				initialSteps = 100; // pump in exog pher, diff, this # stpes
 	
 	// instance variables for model "structures"
-	public ArrayList<Ant>   antList = new ArrayList<Ant> ();
+	public AntPopulation	antPop = new ListAntPopulation( 0 );  // the ants, see antPopulationType
+	protected RankIndex		liveRanks = new RankIndex( 0 );   // for rwrActivationOrder
 	public ArrayList<Food>  foodList = new ArrayList<Food> ();
-	public TorusWorld	    world;         	// 2D class built over Repast
-	public Diffuse2D  	   	pSpace;			// a 2d space for pheromones from RePast
+	public TorusSpace	    world;         	// 2D world, see worldType
+	public PheromoneSpace	pSpace;			// a 2d space for pheromones, see worldType
 	public Diffuse2D        pSpaceCarryingFood;    // a 2d space for pheromones dropped by ants
 
 	public double			probRandMoveMean;   // mean,var of probRandMove
@@ -56,8 +55,45 @@ public class Model extends ModelParameters {
 	public static final     int fixedActivationOrder = 0;
 	public static final     int rwrActivationOrder = 1;  // random with replacement
 	public static final     int rworActivationOrder = 2; // random without replacement
+	public static final     int parallelActivationOrder = 3; // all at once, see AntIntents
+	public static final     int coloredActivationOrder = 4;  // tile colors at once, see ColoredTileStepper
+	public int				activationThreads = 1;  // threads for activationOrders 3, 4
+	public int				activationTileSize = 8; // for coloredActivationOrder, >= 3
+	protected AntIntents	antIntents;			// made when first needed
 
 	public int				randomMoveMethod = 0;  // how bugs choose random cell to move to
+
+	public int				worldType = 0;      // which TorusSpace to build the world with
+	public static final     int repastWorldType = 0;   // TorusWorld over Object2DGrid
+	public static final     int intGridWorldType = 1;  // IntTorusWorld, flat int[] of ids
+	public static final     int chunkedWorldType = 2;  // ChunkedTorusWorld and pSpace, for huge worlds
+
+	public int				diffusionThreads = 1;  // threads for PheromoneField diffuse()
+	public int				diffusionKernel = PheromoneField.exactKernel;  // or fastKernel
+	public int				pherStorage = 0;    // pherSpaceType 1: 0=double, 1=float, 2=16 bit
+	public double			pherEpsilon = 0.0;  // diffused values below this are set to 0
+	public String			warmupCacheDir = "";  // if not "", cache warmed up pSpace here
+	public int				sharedPheromone = 0;  // 1=share the pSpace steps with other runs
+	public int				spectralWarmup = 0;   // 1=compute the warmup with SpectralPheromoneField
+	public int				pherRecountFrequency = 0;  // recount totalPheromone every this many steps
+	public int				pherSpaceType = 2;  // which PheromoneSpace (worldType 0,1)
+	public static final     int repastPherSpaceType = 0;  // Repast Diffuse2D
+	public static final     int fieldPherSpaceType = 1;   // PheromoneField, flat double[]s
+	public static final     int autoPherSpaceType = 2;    // PheromoneField if it matches Diffuse2D
+
+	public int				spawnRegion = 0;    // where new bugs are born
+	public static final     int leftOrTopSpawnRegion = 0;  // x=0 or y=0 edge, 50/50
+	public static final     int allEdgesSpawnRegion = 1;   // any of the four edges
+	public static final     int rectanglesSpawnRegion = 2; // spawnRectangles
+	public String			spawnRectangles = "";  // "x0:y0:x1:y1/..." for spawnRegion 2
+	public ArrayList<SpawnRegion> spawnRegions;    // indexed free cells to spawn into
+
+	public int				nborCountFields = 1;   // 1 -> keep per-cell neighbor counts
+
+	public int				antPopulationType = 0;  // which AntPopulation to keep the ants in
+	public static final     int listAntPopType = 0;   // ListAntPopulation, ArrayList of Ants
+	public static final     int arrayAntPopType = 1;  // ArrayAntPopulation, an array per field
+	public NeighborCountField nborCounts1, nborCounts2;  // #bugs within 1, 2 of each cell
 	
 	// instance variables for aggregate measures
 	public double			antPopAvgX;  	    // observed avg ant X loc
@@ -69,6 +105,7 @@ public class Model extends ModelParameters {
 	public double			avgProbRandomMove;	   // the measured value!
 	public double			avgProbDieCenter;      // the measured value!
 	public int				deathsPerStep;
+	public int				antAllocsPerStep;	   // Ant objects made for new ants (see AntPopulation.newAnt)
 
 	public DescriptiveStatistics avgDStats;  // univariate stats on averageDistanceFromSource
 
@@ -118,6 +155,22 @@ public class Model extends ModelParameters {
 		parametersMap.put( "pRFN", "pherReportFileName" );
 		parametersMap.put( "pRF", "pherReportFrequency" );
 		parametersMap.put( "iS", "initialSteps" );
+		parametersMap.put( "wT", "worldType" );
+		parametersMap.put( "pST", "pherSpaceType" );
+		parametersMap.put( "dT", "diffusionThreads" );
+		parametersMap.put( "dKern", "diffusionKernel" );
+		parametersMap.put( "pS", "pherStorage" );
+		parametersMap.put( "pE", "pherEpsilon" );
+		parametersMap.put( "wCD", "warmupCacheDir" );
+		parametersMap.put( "sPher", "sharedPheromone" );
+		parametersMap.put( "sW", "spectralWarmup" );
+		parametersMap.put( "pRcF", "pherRecountFrequency" );
+		parametersMap.put( "sR", "spawnRegion" );
+		parametersMap.put( "sRects", "spawnRectangles" );
+		parametersMap.put( "nCF", "nborCountFields" );
+		parametersMap.put( "aPT", "antPopulationType" );
+		parametersMap.put( "aT", "activationThreads" );
+		parametersMap.put( "aTS", "activationTileSize" );
 	}
 
 	// Specify what appears in the repast parameter panel
@@ -128,7 +181,12 @@ public class Model extends ModelParameters {
 							"probDieCenterMean", "probDieCenterSD", "probDieCenterMutSD",
 							"activationOrder", "randomMoveMethod", 
 							"bestWinsProb", "tournamentSize", "pherReportFileName",
-							"pherReportFrequency",  "initialSteps",
+							"pherReportFrequency",  "initialSteps", "worldType",
+							"spawnRegion", "spawnRectangles", "nborCountFields",
+							"pherSpaceType", "diffusionThreads", "diffusionKernel",
+							"pherStorage", "pherEpsilon", "warmupCacheDir", "sharedPheromone",
+							"spectralWarmup", "pherRecountFrequency", "antPopulationType",
+							"activationThreads", "activationTileSize",
 				// these are from the super class:
 				"rDebug", "seed" };
 		return params;
@@ -241,7 +299,9 @@ public class Model extends ModelParameters {
 	public void setActivationOrder ( int activationOrder ) { 
 		if ( (activationOrder != fixedActivationOrder) &&
 			  (activationOrder != rwrActivationOrder) &&
-			  (activationOrder != rworActivationOrder) ) {
+			  (activationOrder != rworActivationOrder) &&
+			  (activationOrder != parallelActivationOrder) &&
+			  (activationOrder != coloredActivationOrder) ) {
 			System.err.printf( "\nIllegal activation Order!\n" );
 		}
 		this.activationOrder = activationOrder;  
@@ -268,8 +328,164 @@ public class Model extends ModelParameters {
 		this.initialSteps = initialSteps;
 	}
 
+	// NB: worldType can't be changed after the run starts
+	public int getWorldType () { return worldType; }
+	public void setWorldType ( int worldType ) {
+		if ( (worldType != repastWorldType) &&
+			  (worldType != intGridWorldType) &&
+			  (worldType != chunkedWorldType) ) {
+			System.err.printf( "\nIllegal worldType!\n" );
+		}
+		this.worldType = worldType;
+	}
+
+	public int getSpawnRegion () { return spawnRegion; }
+	public void setSpawnRegion ( int spawnRegion ) {
+		if ( (spawnRegion != leftOrTopSpawnRegion) &&
+			  (spawnRegion != allEdgesSpawnRegion) &&
+			  (spawnRegion != rectanglesSpawnRegion) ) {
+			System.err.printf( "\nIllegal spawnRegion!\n" );
+		}
+		this.spawnRegion = spawnRegion;
+		if ( world != null )
+			createSpawnRegions();
+	}
+	public String getSpawnRectangles () { return spawnRectangles; }
+	public void setSpawnRectangles ( String s ) {
+		spawnRectangles = s;
+		if ( world != null && spawnRegion == rectanglesSpawnRegion )
+			createSpawnRegions();
+	}
+
+	// NB: pherSpaceType can't be changed after the run starts
+	public int getPherSpaceType () { return pherSpaceType; }
+	public void setPherSpaceType ( int pherSpaceType ) {
+		if ( (pherSpaceType != repastPherSpaceType) &&
+			  (pherSpaceType != fieldPherSpaceType) &&
+			  (pherSpaceType != autoPherSpaceType) ) {
+			System.err.printf( "\nIllegal pherSpaceType!\n" );
+		}
+		this.pherSpaceType = pherSpaceType;
+	}
+
+	public int getDiffusionThreads () { return diffusionThreads; }
+	public void setDiffusionThreads ( int n ) {
+		if ( n < 1 ) {
+			System.err.printf( "\nIllegal diffusionThreads!\n" );
+			n = 1;
+		}
+		diffusionThreads = n;
+		if ( pSpace instanceof PheromoneField )
+			( (PheromoneField) pSpace ).setNumThreads( diffusionThreads );
+	}
+
+	// NB: pherStorage can't be changed after the run starts
+	public int getPherStorage () { return pherStorage; }
+	public void setPherStorage ( int s ) {
+		if ( (s != 0) &&
+			  (s != CompactPheromoneField.floatStorage) &&
+			  (s != CompactPheromoneField.fixed16Storage) ) {
+			System.err.printf( "\nIllegal pherStorage!\n" );
+		}
+		pherStorage = s;
+	}
+
+	public double getPherEpsilon () { return pherEpsilon; }
+	public void setPherEpsilon ( double eps ) {
+		if ( eps < 0.0 ) {
+			System.err.printf( "\nIllegal pherEpsilon!\n" );
+			eps = 0.0;
+		}
+		pherEpsilon = eps;
+		if ( pSpace instanceof PheromoneField )
+			( (PheromoneField) pSpace ).setEpsilon( pherEpsilon );
+		else if ( pSpace instanceof ChunkedPheromoneSpace )
+			( (ChunkedPheromoneSpace) pSpace ).setEpsilon( pherEpsilon );
+	}
+
+	public String getWarmupCacheDir () { return warmupCacheDir; }
+	public void setWarmupCacheDir ( String s ) { warmupCacheDir = s; }
+
+	// NB: sharedPheromone can't be changed after the run starts
+	public int getSharedPheromone () { return sharedPheromone; }
+	public void setSharedPheromone ( int s ) {
+		if ( s != 0 && s != 1 ) {
+			System.err.printf( "\nIllegal sharedPheromone!\n" );
+			return;
+		}
+		sharedPheromone = s;
+	}
+
+	public int getSpectralWarmup () { return spectralWarmup; }
+	public void setSpectralWarmup ( int s ) {
+		if ( s != 0 && s != 1 ) {
+			System.err.printf( "\nIllegal spectralWarmup!\n" );
+			return;
+		}
+		// the spectral field fills every cell, so every chunk would be allocated
+		if ( s == 1 && worldType == chunkedWorldType ) {
+			System.err.printf( "\nIllegal spectralWarmup with worldType=2!\n" );
+			return;
+		}
+		spectralWarmup = s;
+	}
+
+	public int getPherRecountFrequency () { return pherRecountFrequency; }
+	public void setPherRecountFrequency ( int f ) {
+		if ( f < 0 ) {
+			System.err.printf( "\nIllegal pherRecountFrequency!\n" );
+			return;
+		}
+		pherRecountFrequency = f;
+	}
+
+	public int getDiffusionKernel () { return diffusionKernel; }
+	public void setDiffusionKernel ( int k ) {
+		if ( (k != PheromoneField.exactKernel) &&
+			  (k != PheromoneField.fastKernel) ) {
+			System.err.printf( "\nIllegal diffusionKernel!\n" );
+		}
+		diffusionKernel = k;
+		if ( pSpace instanceof PheromoneField )
+			( (PheromoneField) pSpace ).setKernel( diffusionKernel );
+	}
+
+	// NB: nborCountFields can't be changed after the run starts
+	public int getNborCountFields () { return nborCountFields; }
+	public void setNborCountFields ( int i ) { nborCountFields = i; }
+
+	// NB: antPopulationType can't be changed after the run starts
+	public int getAntPopulationType () { return antPopulationType; }
+	public void setAntPopulationType ( int t ) {
+		if ( (t != listAntPopType) &&
+			  (t != arrayAntPopType) ) {
+			System.err.printf( "\nIllegal antPopulationType!\n" );
+			return;
+		}
+		antPopulationType = t;
+	}
+
+	public int getActivationThreads () { return activationThreads; }
+	public void setActivationThreads ( int n ) {
+		if ( n < 1 ) {
+			System.err.printf( "\nIllegal activationThreads!\n" );
+			n = 1;
+		}
+		activationThreads = n;
+		if ( antIntents != null )
+			antIntents.setNumThreads( activationThreads );
+	}
+	public int getActivationTileSize () { return activationTileSize; }
+	public void setActivationTileSize ( int n ) {
+		if ( n < 3 ) {
+			System.err.printf( "\nIllegal activationTileSize!\n" );
+			n = 3;
+		}
+		activationTileSize = n;
+	}
+
 	// getters for aggregate measures
-	public int getAntPopSize() { return antList.size(); }
+	public int getAntPopSize() { return antPop.size(); }
 	public double getAntPopAvgX() { return antPopAvgX; }
 	public double getAntAvgDistanceFromSource() { 
 		return antPopAvgDistanceFromSource; }
@@ -290,11 +506,20 @@ public class Model extends ModelParameters {
 		if ( rDebug > 0 )
 			System.out.printf( "==> userSetup...\n" );
 
-		antList = null;
+		antPop = null;
 		foodList = null; // discard old list 
 		world = null;                   // get rid of the world object!
+		spawnRegions = null;
+		nborCounts1 = nborCounts2 = null;
+		if ( pSpace instanceof PheromoneField )
+			( (PheromoneField) pSpace ).setNumThreads( 1 );   // stop its threads
+		else if ( pSpace instanceof SharedPheromoneSpace )
+			( (SharedPheromoneSpace) pSpace ).release();
 		pSpace = null;
 		pSpaceCarryingFood = null;
+		if ( antIntents != null )
+			antIntents.setNumThreads( 1 );   // stop its threads
+		antIntents = null;
 		Ant.resetNextId();				// reset ant ID's to start at 0
 
 		if ( avgDStats != null )
@@ -315,16 +540,39 @@ public class Model extends ModelParameters {
 		if ( rDebug > 0 )
 			System.out.printf( "==> userBuildModel...\n" );
 
-		antList = new ArrayList<Ant> (); // create new empty list 
+		antPop = createAntPopulation(); // create new empty population
 		foodList = new ArrayList<Food> ();
 		
 		// create the 2D grid world of requested size, linked to this model
-		world = new TorusWorld( sizeX, sizeY, this );
+		world = createWorld();
+		createSpawnRegions();
+		// (not for chunked worlds: the fields would be as big as the world)
+		if ( nborCountFields == 1 && worldType != chunkedWorldType ) {
+			nborCounts1 = new NeighborCountField( world, 1 );
+			nborCounts1.attach();
+			nborCounts2 = new NeighborCountField( world, 2 );
+			nborCounts2.attach();
+		}
 
-		createPSpaceAndInjectInitialPheromone();
-		for ( int i = 0; i < initialSteps; ++i ) { // repeat to get desired inital state
-			injectExogenousPheromoneAndUpdate();
-			pSpace.diffuse();
+		// with sharedPheromone, maybe an earlier run already computed our pSpace
+		SharedPheromoneSpace shared = null;
+		if ( sharedPheromone == 1 )
+			shared = SharedPheromoneTrajectory.newReader( getWarmupCacheKey(), this );
+		if ( shared == null ) {
+			createPSpaceAndInjectInitialPheromone();
+			warmUpPSpace();
+			if ( sharedPheromone == 1 )
+				shared = SharedPheromoneTrajectory.start( getWarmupCacheKey(), pSpace,
+							pSourceX, pSourceY, maxPher * exogRate, maxPher, this );
+		}
+		else {
+			setPheromoneSource();
+		}
+		if ( shared != null ) {
+			pSpace = shared;
+			if ( rDebug > 0 )
+				System.out.printf( "- userBuildModel: sharing pSpace (%d steps computed so far).\n",
+								   shared.getLastTick() );
 		}
 
 		// tell the Food class about this (Model)and world addresses
@@ -363,6 +611,185 @@ public class Model extends ModelParameters {
 
 	}
 
+	/**
+	 * createWorld
+	 * @return a new, empty world of sizeX by sizeY, of the requested worldType.
+	 */
+	public TorusSpace createWorld () {
+		if ( worldType == intGridWorldType )
+			return new IntTorusWorld( sizeX, sizeY, this );
+		if ( worldType == chunkedWorldType )
+			return new ChunkedTorusWorld( sizeX, sizeY, this );
+		return new TorusWorld( sizeX, sizeY, this );
+	}
+
+	/**
+	 * createAntPopulation
+	 * @return a new, empty AntPopulation of the requested antPopulationType.
+	 */
+	public AntPopulation createAntPopulation () {
+		if ( antPopulationType == arrayAntPopType )
+			return new ArrayAntPopulation( numAnts );
+		return new ListAntPopulation( numAnts );
+	}
+
+	/**
+	 * usesPheromoneField
+	 * @return true if createPSpace() makes one of our own fields (for
+	 * worldType 0,1): with pherSpaceType 1, or with 2 if
+	 * PheromoneField.matchesDiffuse2D (checked against the Diffuse2D
+	 * we are running with, so the default gives Diffuse2D's values).
+	 */
+	public boolean usesPheromoneField () {
+		if ( pherSpaceType == autoPherSpaceType )
+			return PheromoneField.matchesDiffuse2D( diffusionK, evapRate, exogRate, maxPher );
+		return pherSpaceType == fieldPherSpaceType;
+	}
+
+	/**
+	 * createPSpace
+	 * @return a new, empty pheromone space of sizeX by sizeY,
+	 * for the worldType and pherSpaceType, set up as the parameters say.
+	 */
+	public PheromoneSpace createPSpace () {
+		if ( worldType == chunkedWorldType ) {
+			ChunkedPheromoneSpace chunked = new ChunkedPheromoneSpace( diffusionK, evapRate, sizeX, sizeY );
+			chunked.setEpsilon( pherEpsilon );
+			return chunked;
+		}
+		if ( !usesPheromoneField() )
+			return new RepastPheromoneSpace( diffusionK, evapRate, sizeX, sizeY );
+		if ( pherStorage == CompactPheromoneField.floatStorage ||
+			 pherStorage == CompactPheromoneField.fixed16Storage )
+			return new CompactPheromoneField( pherStorage, diffusionK, evapRate,
+											  sizeX, sizeY, maxPher );
+		PheromoneField field = new PheromoneField( diffusionK, evapRate, sizeX, sizeY );
+		field.setNumThreads( diffusionThreads );
+		field.setKernel( diffusionKernel );
+		field.setEpsilon( pherEpsilon );
+		return field;
+	}
+
+	/**
+	 * createSpawnRegions
+	 * set up the indexed regions new bugs are born into, per spawnRegion:
+	 * 0 - two regions, the left (x=0) and top (y=0) edges (pick one 50/50)
+	 * 1 - one region, all four edges
+	 * 2 - one region, the spawnRectangles
+	 */
+	public void createSpawnRegions () {
+		int xMax = world.getSizeX() - 1, yMax = world.getSizeY() - 1;
+		if ( spawnRegions != null ) {
+			for ( SpawnRegion r : spawnRegions )
+				r.detach();
+		}
+		spawnRegions = new ArrayList<SpawnRegion>();
+		if ( spawnRegion == allEdgesSpawnRegion ) {
+			SpawnRegion edges = new SpawnRegion( world );
+			edges.addRectangle( 0, 0, xMax, 0 );
+			edges.addRectangle( 0, yMax, xMax, yMax );
+			edges.addRectangle( 0, 0, 0, yMax );
+			edges.addRectangle( xMax, 0, xMax, yMax );
+			spawnRegions.add( edges );
+		}
+		else if ( spawnRegion == rectanglesSpawnRegion ) {
+			SpawnRegion rects = new SpawnRegion( world );
+			if ( rects.parseRectangles( spawnRectangles ) == 0 )
+				System.err.printf( "\n** no spawnRectangles given for spawnRegion=2!\n" );
+			spawnRegions.add( rects );
+		}
+		else {
+			SpawnRegion top = new SpawnRegion( world );
+			top.addRectangle( 0, 0, xMax, 0 );
+			spawnRegions.add( top );
+			SpawnRegion left = new SpawnRegion( world );
+			left.addRectangle( 0, 0, 0, yMax );
+			spawnRegions.add( left );
+		}
+		for ( SpawnRegion r : spawnRegions )
+			r.attach();
+	}
+
+	/**
+	 * warmUpPSpace
+	 * run the initialSteps warmup on the new pSpace, or load it from
+	 * the warmupCacheDir if it is there (and save it there if not).
+	 * With spectralWarmup, the warmup is computed by a SpectralPheromoneField
+	 * (without stepping the field, so thousands of steps cost little).
+	 */
+	private void warmUpPSpace () {
+		// the warmup doesn't depend on the seed, so maybe we have it saved
+		if ( warmupCacheDir.length() > 0 &&
+			 WarmupCache.load( pSpace, warmupCacheDir, getWarmupCacheKey() ) ) {
+			if ( rDebug > 0 )
+				System.out.printf( "- userBuildModel: loaded warmed up pSpace from %s.\n",
+								   WarmupCache.getFile( warmupCacheDir, getWarmupCacheKey() ) );
+			return;
+		}
+		if ( spectralWarmup == 1 && worldType == chunkedWorldType ) {
+			// (worldType was set after spectralWarmup)
+			System.err.printf( "\nIllegal spectralWarmup with worldType=2! Stepping the warmup.\n" );
+		}
+		if ( spectralWarmup == 1 && worldType != chunkedWorldType ) {
+			SpectralPheromoneField spectral = new SpectralPheromoneField( diffusionK, evapRate,
+							sizeX, sizeY, pSourceX, pSourceY, maxPher * exogRate, maxPher );
+			spectral.putSourceValue( pSpace.getValueAt( pSourceX, pSourceY ) );
+			spectral.runWarmup( initialSteps );
+			spectral.copyInto( pSpace );
+		}
+		else if ( pSpace instanceof PheromoneField ) {
+			// nothing looks at the field until the warmup is done, so it can
+			// do several steps per pass over the field (same values)
+			( (PheromoneField) pSpace ).runWarmup( initialSteps, pSourceX, pSourceY,
+												   maxPher * exogRate, maxPher );
+		}
+		else {
+			for ( int i = 0; i < initialSteps; ++i ) { // repeat to get desired inital state
+				injectExogenousPheromoneAndUpdate();
+				pSpace.diffuse();
+			}
+		}
+		if ( warmupCacheDir.length() > 0 )
+			WarmupCache.save( pSpace, warmupCacheDir, getWarmupCacheKey() );
+	}
+
+	/**
+	 * getWarmupCacheKey
+	 * @return everything the pSpace after the initialSteps warmup depends on
+	 * (which is also everything the pSpace at later steps depends on,
+	 * so it keys the SharedPheromoneTrajectory's too).
+	 * The kind of pSpace is as createPSpace() picks it.
+	 */
+	public String getWarmupCacheKey () {
+		String key = String.format( "%d %d %s %s %s %d %d %d", sizeX, sizeY,
+									Double.toString( diffusionK ), Double.toString( evapRate ),
+									Double.toString( exogRate ), maxPher, initialSteps,
+									spectralWarmup );
+		if ( worldType == chunkedWorldType )
+			key += " ChunkedPheromoneSpace " + Double.toString( pherEpsilon );
+		else if ( !usesPheromoneField() )
+			key += " RepastPheromoneSpace";
+		else if ( pherStorage == CompactPheromoneField.floatStorage ||
+				  pherStorage == CompactPheromoneField.fixed16Storage )
+			key += " CompactPheromoneField " + pherStorage;
+		else
+			key += " PheromoneField " + diffusionKernel + " " + Double.toString( pherEpsilon );
+		return key;
+	}
+
+	/**
+	 * getNumberOfNeighbors
+	 * @return number of bugs (and foods) within d of x,y, not counting x,y.
+	 * Uses the neighbor count fields if we have one for d, else asks the world.
+	 */
+	public int getNumberOfNeighbors ( int x, int y, int d ) {
+		if ( d == 1 && nborCounts1 != null )
+			return nborCounts1.getNumberOfNeighbors( x, y );
+		if ( d == 2 && nborCounts2 != null )
+			return nborCounts2.getNumberOfNeighbors( x, y );
+		return world.getNumberOfNeighbors( x, y, d );
+	}
+
 	/**
 	 * Opens report file for info about pSpace.
 	 */
@@ -385,10 +812,8 @@ public class Model extends ModelParameters {
 
 		// Set up the pheromone space and related fields.
 		// create the 2D diffusion space for pheromones, tell bugs about it
-		pSpace = new Diffuse2D( diffusionK, evapRate, sizeX, sizeY );
-		// set up the location of exogenous source of pheromone
-		pSourceX = sizeX/2;
-		pSourceY = sizeY/2;
+		pSpace = createPSpace();
+		setPheromoneSource();
 		// lets start the world with some pheromone...
 		// more than gets added each step...but not more than maxPher!
 		double exogPheromone = 2.0 * maxPher * exogRate;
@@ -398,7 +823,15 @@ public class Model extends ModelParameters {
 		if ( rDebug > 0 )
 			System.out.printf( "- userBuildModel: put initPher=%.3f at %d,%d.\n",
 				  pSpace.getValueAt(pSourceX,pSourceY), pSourceX, pSourceY );
+	}
 
+	/**
+	 * set up the location of exogenous source of pheromone,
+	 * and calc max distance to that source cell.
+	 */
+	private void setPheromoneSource() {
+		pSourceX = sizeX/2;
+		pSourceY = sizeY/2;
 		calcAndSetMaxDistanceToSource();
 	}
 
@@ -415,21 +848,26 @@ public class Model extends ModelParameters {
 
 	/**
 	// createAntsAndAddToWorld
-	// create numAnts ants,add to antList and 
+	// create numAnts ants,add to antPop and 
 	// add to random locations in world
 	//
-	// NB: this will be slow if numAnts ~ number of cells in world
+	// NB: the world picks from its index of empty cells, so this
+	//     is fast even if numAnts ~ number of cells in world
+	// NB: the ant goes into antPop first, so the world gets the
+	//     population's Ant for it (see AntPopulation.load)
 	*/
 	
 	public void createAntsAndAddToWorld ( ) {
-		// create the ants, add to world and to the antlist
+		// create the ants, add to world and to the antPop
 		for ( int i = 0; i < numAnts; ++i ) {
-			Ant ant = createNewAnt();
-			if ( world.placeAtRandomLocation( ant ) )  // if added to world...
-				antList.add( ant );					  // add to list
-			else
+			int a = antPop.add( createNewAnt() );
+			if ( world.placeAtRandomLocation( antPop.load( a ) ) )  // if added to world...
+				antPop.store( a );					  // keep it
+			else {
+				antPop.remove( a );
 				System.out.printf( "\n** World too full (%d) for new ant!\n\n",
-								   antList.size() );
+								   antPop.size() );
+			}
 		}
 
 	}
@@ -487,7 +925,7 @@ public class Model extends ModelParameters {
 	 * @return
 	 */
 	public Ant createNewAnt( ) {
-		Ant ant = new Ant();
+		Ant ant = antPop.newAnt();   // maybe one that died, made new again
 		double wt = Model.getUniformDoubleFromTo(0.0,1.0) * maxAntWeight;
 		ant.setWeight( wt );
 		// get a normal sample (repeat until in [0,1])
@@ -520,6 +958,10 @@ public class Model extends ModelParameters {
 	//       bugs could get 0 or > 1 chances per time step!
 	// rworActivationOrder  - random without replacement
 	//       bugs get exactly 1 chance per time step, in a random order
+	// parallelActivationOrder - all at once: each decides, seeing the world as at
+	//       the start of the step, then they move (see AntIntents)
+	// coloredActivationOrder - one at a time, as if in tile order, but tiles far
+	//       enough apart at once (see ColoredTileStepper)
 	 */
 
 	public void step () {
@@ -527,7 +969,7 @@ public class Model extends ModelParameters {
 			System.out.printf( "==> Model step %.0f:\n", getTickCount() );
 
 		// Kludge for testing: remove first bug on list!
-		// removeAntFromModel( antList.get(0) );
+		// removeAntFromModel( 0 );
 		
 		generateNewAnts();   // add new bugs as needed
 
@@ -537,8 +979,7 @@ public class Model extends ModelParameters {
 		
 		activateAntsToTakeSteps();
 		
-		for ( Ant ant : antList )   // each agents gets older
-			ant.incrementAge(1);
+		antPop.incrementAges( 1 );   // each agents gets older
 
 		injectExogenousPheromoneAndUpdate();
 		
@@ -558,27 +999,31 @@ public class Model extends ModelParameters {
 	// offspring gets parent's probDieCenter + G(0,probDieCenterSD)
 	// offspring gets parent's probRandomMomve + G(0,probRandomMoveSD)
 	// add to edges of world.  for now: just add to X=0 edge!
-	// if added ok, also add to antList.
+	// if added ok, keep it in antPop.
 	 */
 	public void generateNewAnts () {
+		int allocs = antPop.getNumAntsAllocated();
 
-		for ( int i = antList.size(); i < numAnts; ++i ) {
+		for ( int i = antPop.size(); i < numAnts; ++i ) {
 			Ant offspring = createNewAnt();
-			Ant parent = tournametnSelectParent ( tournamentSize );
+			int parent = tournametnSelectParent ( tournamentSize );
 			
 			setOffSpringProbDieCenter( parent, offspring );
 			setOffSpringProbRandomMove( parent, offspring );
 
-			if ( !addAntToRandomEdge( offspring ) ) {
+			int a = antPop.add( offspring );
+			if ( !addAntToRandomEdge( antPop.load( a ) ) ) {
+				antPop.remove( a );
 				System.err.printf( "==> step %.0f: couldn't find place on edge for new bug!\n",
 								   getTickCount() );
 				break;
 			}
-			antList.add( offspring );
+			antPop.store( a );
 			if ( rDebug > 0 )
 				System.out.printf( "    - Added new bug at %d,%d.\n",
-								   offspring.getX(), offspring.getY() );
+								   antPop.getX( a ), antPop.getY( a ) );
 		}
+		antAllocsPerStep = antPop.getNumAntsAllocated() - allocs;
 		
 	}
 
@@ -591,23 +1036,24 @@ public class Model extends ModelParameters {
 	// then update the pSpace -- move values from the write to read copy
 	 */
 	private void injectExogenousPheromoneAndUpdate() {
-		double v = (maxPher * exogRate) + pSpace.getValueAt(  pSourceX, pSourceY );
-		v =  Math.min( v, maxPher );
-		pSpace.putValueAt( pSourceX, pSourceY, v );
-		pSpace.update();
+		// NB: same as putValueAt( min( read + maxPher*exogRate, maxPher ) ) and update(),
+		// but the pSpaces (except Repast's) do it without a pass over the whole space.
+		// Diffuse2D only takes puts into its write copy, so with pherSpaceType 0 (or 2,
+		// if PheromoneField doesn't match it) a step is still diffuse + update's copy.
+		pSpace.inject( pSourceX, pSourceY, maxPher * exogRate, maxPher );
 	}
 
 	/**
 	 * removeAntFromModel:
-	 * - if removeFromList is true, remove from antList
-	 * - remove it from world
+	 * - remove ant i from world
+	 * - mark it dead in antPop, so no ant moves to another index;
+	 *   antPop.removeDead() takes it out (activateAntsToTakeSteps does, once it is done)
 	 * - increment the count of deathsPerStep
 	 * NB: assumes it is in world at its x,y location!
 	 */
-	public void removeAntFromModel ( Ant ant, Boolean removeFromList ) {
-		if ( removeFromList )
-			antList.remove( ant );
-		world.putObjectAt( ant.getX(), ant.getY(), null );
+	public void removeAntFromModel ( int i ) {
+		world.putObjectAt( antPop.getX( i ), antPop.getY( i ), null );
+		antPop.markDead( i );
 		++deathsPerStep;
 	}
 	
@@ -621,25 +1067,25 @@ public class Model extends ModelParameters {
 	// best defined as lowest probDieCenter value
 	 * 
 	 * @param tournamentSize2
-	 * @return
+	 * @return the winner's index in antPop
 	 */
-	private Ant tournametnSelectParent( int tSize ) {
-		Ant winner = null;
-		ArrayList<Ant> cList = new ArrayList<Ant>();
+	private int tournametnSelectParent( int tSize ) {
+		Integer winner = null;
+		ArrayList<Integer> cList = new ArrayList<Integer>();
 
 		// get the contestants (nb: some could be there twice)
-		int alistMax = antList.size() - 1;
+		int alistMax = antPop.size() - 1;
 		for ( int i = 0; i < tSize; ++i ) {
-			cList.add (  antList.get( Model.getUniformIntFromTo( 0, alistMax ) ) );
+			cList.add (  Model.getUniformIntFromTo( 0, alistMax ) );
 		}
 		Collections.sort( cList,   // sort by probDieCenter -- higher first
-			  (java.util.Comparator<? super Ant>) new ProbDieCenterComparator() );
+			  new ProbDieCenterComparator() );
 		
 		
 		// select a winner 
 		// go down list in fitness order, giving each a chance to win.
 		// if we get to the end with no winner, the last guy wins
-		for ( Ant candidate : cList ) {
+		for ( Integer candidate : cList ) {
 			if ( bestWinsProb > Model.getUniformDoubleFromTo( 0.0, 1.0 ) ) {
 				winner = candidate;
 				break;
@@ -648,16 +1094,16 @@ public class Model extends ModelParameters {
 		if ( winner == null ) // the last wins by default!
 			winner = cList.get( cList.size()-1 );
 
-		//System.out.printf( "cList:   (winner=%.3f)\n", winner.getProbDieCenter() );
-		//for ( Ant candidate : cList ) {
-		//	System.out.printf( "cand pdc=%.3f\n", candidate.getProbDieCenter() );
+		//System.out.printf( "cList:   (winner=%.3f)\n", antPop.getProbDieCenter( winner ) );
+		//for ( Integer candidate : cList ) {
+		//	System.out.printf( "cand pdc=%.3f\n", antPop.getProbDieCenter( candidate ) );
 		//}
 		
 		if ( rDebug > 0 && cList.size() > 1 ) {  // only looks at top 2
 			System.out.printf( "tsp: %.3f > %.3f (bwp=%.2f) -> winner = %.3f.\n",
-							   cList.get(0).getProbDieCenter(),
-							   cList.get(1).getProbDieCenter(), bestWinsProb,
-							   winner.getProbDieCenter() );
+							   antPop.getProbDieCenter( cList.get(0) ),
+							   antPop.getProbDieCenter( cList.get(1) ), bestWinsProb,
+							   antPop.getProbDieCenter( winner ) );
 		}
 
 		return winner;
@@ -666,14 +1112,14 @@ public class Model extends ModelParameters {
 	/**	 
 	 * set offspring's probDieCenter value to parent's value + mutation, ie,
 	 * add N(0,probDieCenterSD) to it, retrying until in [0,1].
-	 * @param parent
+	 * @param parent  (index in antPop)
 	 * @param offspring
 	 */
-	private void setOffSpringProbDieCenter(Ant parent, Ant offspring) {
+	private void setOffSpringProbDieCenter(int parent, Ant offspring) {
 		double d = -1;
 		int numTrials = 0, maxTrials = 1024;  // just in case...
 		while ( (d < 0.0 || d > 1.0) && numTrials < maxTrials ) {  // get a legal prob
-			d = parent.getProbDieCenter();
+			d = antPop.getProbDieCenter( parent );
 			d += Model.getNormalDouble( 0, probDieCenterSD );
 			++numTrials;
 		}
@@ -681,7 +1127,7 @@ public class Model extends ModelParameters {
 		// this shouldn't happen, but you never know...
 		if ( numTrials == maxTrials ) {
 			System.err.printf( "\n=>  couldn't get mutation in range.\n" );
-			System.err.printf( "  parent probDieCenter = %f.\n", parent.getProbDieCenter() );
+			System.err.printf( "  parent probDieCenter = %f.\n", antPop.getProbDieCenter( parent ) );
 			System.err.printf( "  probDieCenterSD = %f \n", probDieCenterMutSD );
 			d = 1.0;
 		}
@@ -691,15 +1137,15 @@ public class Model extends ModelParameters {
 	/**
 	 * set offspring's probRandomMove value to parent's value + mutation, ie,
 	 * add N(0,probRandMoveSD) to it, retrying until in [0,1].
-	 * @param parent
+	 * @param parent  (index in antPop)
 	 * @param offspring
 	 */
-	private void setOffSpringProbRandomMove(Ant parent, Ant offspring) {
+	private void setOffSpringProbRandomMove(int parent, Ant offspring) {
 		double d = -1;
 		int numTrials = 0, maxTrials = 1024;  // just in case...
 		
 		while ( (d < 0.0 || d > 1.0) && numTrials < maxTrials ) {  // get a legal prob
-			d = parent.getProbRandMove();
+			d = antPop.getProbRandMove( parent );
 			d += Model.getNormalDouble( 0, probRandMoveSD );
 			++numTrials;
 		}
@@ -707,7 +1153,7 @@ public class Model extends ModelParameters {
 		// this shouldn't happen, but you never know...
 		if ( numTrials == maxTrials ) {
 			System.err.printf( "\n=> couldn't get mutation in range.\n" );
-			System.err.printf( "  parent probRandMove = %f.\n", parent.getProbRandMove() );
+			System.err.printf( "  parent probRandMove = %f.\n", antPop.getProbRandMove( parent ) );
 			System.err.printf( "  probRandMoveSD = %f \n", probRandMoveMutSD );
 			d = 1.0;
 		}
@@ -716,88 +1162,104 @@ public class Model extends ModelParameters {
 
 	/**
 	// addBugToRandomEdge
-	// add specified bug to randomly selected cell on an "edge", 
-	// i.e, x=0 or y = 0 or x=sizeX-1 or y=sizeY-1 
-	//
-	// FOR NOW, just add to left (x=0) edge!
+	// add specified bug to randomly selected empty cell in the spawn region,
+	// i.e, (spawnRegion=0) the top (y=0) or left (x=0) edge, picked 50/50,
+	// (1) any edge, or (2) the spawnRectangles.
+	// The regions keep an index of their empty cells, so this is O(1),
+	// and only fails if all the cells are full.
+	// (if the edge picked for spawnRegion=0 is full, we use the other one.)
 	 * 
 	 * @param bug
 	 * @return
 	 */
 	
 	public boolean addAntToRandomEdge ( Ant bug ) {
-		int randomX = 0, randomY =  0, maxTrials = 1024, nmTrials = 0;
-		boolean added = true; // lets be hopeful!
-
-		boolean top = false;
-		if  ( Model.getUniformDoubleFromTo( 0, 1 ) > 0.5 ) {
-			top = true;
+		SpawnRegion region = spawnRegions.get( 0 );
+		if ( spawnRegions.size() > 1 ) {  // top or left
+			if  ( Model.getUniformDoubleFromTo( 0, 1 ) <= 0.5 )
+				region = spawnRegions.get( 1 );
+			if ( region.getNumFreeCells() == 0 )
+				region = spawnRegions.get( region == spawnRegions.get( 0 ) ? 1 : 0 );
 		}
-			
-	   	// find a random place that is un-occupied on left edge
-	   	do {
-	   		if ( top )
-			    randomX =  getUniformIntFromTo( 0, world.getSizeX () - 1 );
-	   		else
-	   			randomY =  getUniformIntFromTo( 0, world.getSizeY () - 1 );
-			++nmTrials;
-		} while ( world.getObjectAt( randomX, randomY ) != null && nmTrials < maxTrials );
-
-		if ( nmTrials < maxTrials ) {
-			world.putObjectAt( randomX, randomY, bug );
-			bug.setX( randomX );
-			bug.setY( randomY );
-		}
-		else {
+
+		if ( !region.placeAtRandomFreeCell( bug ) ) {
 			System.err.printf( "\n ==> addBugToRandomEdge -- no empty cell found!\n\n" );
-			added = false;
+			return false;
 		}
-		return added;
+		return true;
 	}
 	
 	/**
 	 * activate bugs in order based on activationOrder parameter.
 	 * if ant step() returns false, the ant is dead, so remove it.
+	 * Dead ants are only marked dead as we go (O(1), and no ant moves,
+	 * so no ant is skipped), and all removed from antPop at the end,
+	 * in one pass that keeps the order of the rest.
 	 */
 	public void activateAntsToTakeSteps() {
-		Boolean live;
 		deathsPerStep = 0;
 		// activate bugs in user specified order
 		if ( activationOrder == fixedActivationOrder ) {
 			// now the bugs get a chance to move around
-			for ( int i = 0; i < antList.size(); i++ ) {
-				Ant aBug = antList.get (i);
-				live = aBug.step ();
-				if ( !live ) {  // now we kludge a bit to remove from list properly!
-					removeAntFromModel ( aBug, true );
-					--i;       // THE KLUDGE -- so as not to skip a bug on the list!
-				}
+			for ( int i = 0; i < antPop.size(); i++ ) {
+				if ( !stepAnt( i ) )
+					removeAntFromModel ( i );
 			}
 		}
 		else if (  activationOrder == rwrActivationOrder ) {
-			for ( int i = 0; i < antList.size(); i++ ) {
-				int r = getUniformIntFromTo( 0, antList.size()-1 );
-				Ant aBug = antList.get ( r );
-				if ( !aBug.step() ) {   // note we don't need a kludge, since we pick randomly
-					removeAntFromModel ( aBug, true );
+			// pick from the live ants only, the r-th in order, as if the dead were gone
+			liveRanks.reset( antPop.size() );
+			for ( int i = 0; i < liveRanks.getCount(); i++ ) {
+				int r = liveRanks.select( getUniformIntFromTo( 0, liveRanks.getCount()-1 ) );
+				if ( !stepAnt( r ) ) {
+					removeAntFromModel ( r );
+					liveRanks.remove( r );
 				}
 			}
 		}
 		else if (  activationOrder == rworActivationOrder ) {
 			// here we shuffle the list, then process in order
-			SimUtilities.shuffle( antList, uchicago.src.sim.util.Random.uniform );
-			Iterator<Ant> bugIter = antList.iterator();
-			while ( bugIter.hasNext() ) {
-				Ant aBug = bugIter.next();
-				if ( !aBug.step() ) { 
-					bugIter.remove();  // remove it from list
-					removeAntFromModel ( aBug, false );  // false -> its already gone from list
-				}
+			antPop.shuffle();
+			for ( int i = 0; i < antPop.size(); i++ ) {
+				if ( !stepAnt( i ) )
+					removeAntFromModel ( i );
 			}
 		}
+		else if (  activationOrder == parallelActivationOrder
+				   || activationOrder == coloredActivationOrder ) {
+			// decide (in parallel), then move -- see AntIntents, ColoredTileStepper
+			getAntIntents().step();
+		}
+		antPop.removeDead();
 
 	}
 
+	/**
+	 * getAntIntents
+	 * @return the AntIntents for parallelActivationOrder, or ColoredTileStepper
+	 * for coloredActivationOrder -- a new one if the order or tile size changed.
+	 */
+	protected AntIntents getAntIntents () {
+		boolean colored = ( activationOrder == coloredActivationOrder );
+		if ( antIntents == null
+			 || colored != ( antIntents instanceof ColoredTileStepper )
+			 || ( colored && ( (ColoredTileStepper) antIntents ).getTileSize() != activationTileSize ) ) {
+			if ( antIntents != null )
+				antIntents.setNumThreads( 1 );   // stop its threads
+			antIntents = colored ? new ColoredTileStepper( this, activationTileSize )
+								 : new AntIntents( this );
+			antIntents.setNumThreads( activationThreads );
+		}
+		return antIntents;
+	}
+
+	// step ant i, and keep where it moved to; false if it died
+	private boolean stepAnt ( int i ) {
+		boolean live = antPop.load( i ).step();
+		antPop.store( i );
+		return live;
+	}
+
 	/**
 	// stepReport
 	// called each model time step to write out lines that look like: 
@@ -816,10 +1278,11 @@ public class Model extends ModelParameters {
 
 			// Append to String s here to write other data to report lines:
 
-			s += String.format( " %3d ", antList.size()  );
+			s += String.format( " %3d ", antPop.size()  );
 			s += String.format( "  %3d %6.2f", deathsPerStep, antPopAvgX );
 			s += String.format( "  %6.3f   %6.3f", antPopAvgDistanceFromSource, avgDStats.getMean()  );
 			s += String.format( "   %6.2f   %6.2f", avgProbRandomMove, avgProbDieCenter );
+			s += String.format( "  %4d", antAllocsPerStep );
 
 			// write it to the plain text report file, 'flush' buffer to file
 			writeLineToPlaintextReportFile( s );
@@ -849,8 +1312,8 @@ public class Model extends ModelParameters {
 	
 	public void writeHeaderCommentsToReportFile () {
 		writeLineToPlaintextReportFile( "#                                    Win10   " );
-		writeLineToPlaintextReportFile( "#       Num   Num  avg    AveDist   AveDist    Avg      Avg" );
-		writeLineToPlaintextReportFile( "# time  Ants  Die  AntX   toSource  toSource  RandMov  PrDieC" );
+		writeLineToPlaintextReportFile( "#       Num   Num  avg    AveDist   AveDist    Avg      Avg    Ant" );
+		writeLineToPlaintextReportFile( "# time  Ants  Die  AntX   toSource  toSource  RandMov  PrDieC  Allocs" );
 	}
 
 	/**
@@ -863,66 +1326,74 @@ public class Model extends ModelParameters {
 	*/
 	public void calcStats () {
 		antPopAvgX = 0.0;  avgProbRandomMove = 0.0; avgProbDieCenter = 0.0;
+		int n = antPop.size();
 
 		// average X is sort of silly...
-		for ( Ant ant : antList ) {
-			antPopAvgX += ant.getX();
-			avgProbRandomMove += ant.getProbRandMove();
-			avgProbDieCenter += ant.getProbDieCenter();
+		for ( int i = 0; i < n; ++i ) {
+			antPopAvgX += antPop.getX( i );
+			avgProbRandomMove += antPop.getProbRandMove( i );
+			avgProbDieCenter += antPop.getProbDieCenter( i );
 		}
-		if ( antList.size() > 1 ) {
-			antPopAvgX /= antList.size();
-			avgProbRandomMove /= antList.size();
-			avgProbDieCenter /= antList.size();
+		if ( n > 1 ) {
+			antPopAvgX /= n;
+			avgProbRandomMove /= n;
+			avgProbDieCenter /= n;
 		}
 		// calculate average bug distance from pheromone source
 		antPopAvgDistanceFromSource = calcAvgAntPopDistanceTo( pSourceX, pSourceY );
 		// record some stats every step
 		avgDStats.addValue( antPopAvgDistanceFromSource );
 		
-		// get total pheromone in pSpace
-		totalPheromone = 0;
-		for ( int x = 0; x < sizeX; ++x ) {
-			for ( int y = 0; y < sizeY; ++y ) {
-				totalPheromone += pSpace.getValueAt( x, y );
-			}
+		// get total pheromone in pSpace (kept by the pSpace as it goes,
+		// but every pherRecountFrequency steps summed over again)
+		totalPheromone = pSpace.getTotalValue();
+		if ( pherRecountFrequency > 0 && (int) getTickCount() % pherRecountFrequency == 0 ) {
+			double recount = pSpace.recountTotalValue();
+			if ( rDebug > 0 )
+				System.out.printf( "    - recounted totalPheromone %.6f, was off by %.3g.\n",
+								   recount, totalPheromone - recount );
+			totalPheromone = recount;
 		}
 
 		// calc avg number of neighbors each bug has, 1 and 2 away
+		// (with nborCountFields=1 these are just lookups)
 		double totalNbor1Count = 0.0, totalNbor2Count = 0.0;
-		for ( Ant aBug : antList ) {
-			totalNbor1Count += aBug.getNumberOfNeighbors( 1 );
-			totalNbor2Count += aBug.getNumberOfNeighbors( 2 );
+		for ( int i = 0; i < n; ++i ) {
+			totalNbor1Count += getNumberOfNeighbors( antPop.getX( i ), antPop.getY( i ), 1 );
+			totalNbor2Count += getNumberOfNeighbors( antPop.getX( i ), antPop.getY( i ), 2 );
 		}
-	    if ( antList.size() > 1 ) {
-			averageBugNbor1Count = totalNbor1Count / antList.size();
-			averageBugNbor2Count = totalNbor2Count / antList.size();
+	    if ( n > 1 ) {
+			averageBugNbor1Count = totalNbor1Count / n;
+			averageBugNbor2Count = totalNbor2Count / n;
 		}
 	}
 
 	public double calcAvgAntPopDistanceTo ( int x, int y ) {
 		double avgD = 0.0, distance, bugX, bugY, deltaX, deltaY;
-		for ( Ant bug : antList ) {
-			bugX = (double) bug.getX();
-			bugY = (double) bug.getY();
+		int n = antPop.size();
+		for ( int i = 0; i < n; ++i ) {
+			bugX = (double) antPop.getX( i );
+			bugY = (double) antPop.getY( i );
 			deltaX = bugX - x;
 			deltaY = bugY - y;
 			distance = Math.sqrt( (deltaX*deltaX) + (deltaY*deltaY) );
 			avgD += distance;
 		}
-		if ( antList.size() > 1 ) 
-			avgD /= antList.size();
+		if ( n > 1 ) 
+			avgD /= n;
 		return avgD;
 	}
 
 	/**
 	// printBugs
 	// print some info about bugs.
-	// NOTE: we sort them first, by distance to source.
+	// NOTE: we sort them first, by distance to source
+	//       (a copy of the list, so the activation order stays as it was).
 	*/
 	//@SuppressWarnings("unchecked") 
 	public void printBugs ( ) {
 		// sort the bugs based on distance to source
+		ArrayList<Ant> antList = new ArrayList<Ant>( antPop.getAnts() );
 		Collections.sort( antList, 
 			  (java.util.Comparator<? super Ant>) new BugDistanceToSourceComparator() );
  		//Collections.sort( antList, 
@@ -964,7 +1435,7 @@ public class Model extends ModelParameters {
 	//
 	 */
 	public void resetBugProbRandMove () {
-		for ( Ant aBug : antList ) {
+		for ( Ant aBug : antPop.getAnts() ) {
 			double r = getNormalDoubleProb( probRandMoveMean, probRandMoveSD );
 			aBug.setProbRandMove( r );
 		}
@@ -1013,13 +1484,13 @@ public class Model extends ModelParameters {
 		}
 	}
 	/**
-	 *  we want to sort ants so that lower probDieCenter is first,
+	 *  we want to sort ants (indexes in antPop) so that lower probDieCenter is first,
 	 *  because lower probDieCenter is "better" (more fit)
 	 */
-	private class ProbDieCenterComparator implements Comparator<Ant> {
-		public  int compare ( Ant bug1, Ant bug2 ) {
-			double d1 = ( (Ant) bug1 ).getProbDieCenter();
-			double d2 = ( (Ant) bug2 ).getProbDieCenter();
+	private class ProbDieCenterComparator implements Comparator<Integer> {
+		public  int compare ( Integer bug1, Integer bug2 ) {
+			double d1 = antPop.getProbDieCenter( bug1 );
+			double d2 = antPop.getProbDieCenter( bug2 );
 			if ( d1 > d2 )    // d1 bigger, so it should sort after d2
 				return 1;
 			else if ( d1 < d2 )
@@ -1079,7 +1550,12 @@ public class Model extends ModelParameters {
 		System.out.printf( "  exogRate - rate of injection of exogenous pheromone. 1 = max.\n" );
 
 		System.out.printf( "\n" );
-		System.out.printf( "  activationOrder   0=fixed; 1=RWR, 2=RWOR \n" );
+		System.out.printf( "  activationOrder   0=fixed; 1=RWR, 2=RWOR; 3=parallel: all decide at once,\n" );
+		System.out.printf( "                    then move, cells wanted twice go to one by lot (see AntIntents)\n" );
+		System.out.printf( "                    4=colored tiles: one at a time, by tile, but tiles of the same\n" );
+		System.out.printf( "                    color (3x3 pattern) at once (see ColoredTileStepper)\n" );
+		System.out.printf( "  activationThreads - threads for activationOrder=3,4, same results with any number\n" );
+		System.out.printf( "  activationTileSize - about how wide the tiles are for activationOrder=4 (>= 3)\n" );
 		System.out.printf( "  probRandomMoveMean -- init probability a bug moves randomly drawn from\n" );
 		System.out.printf( "  probRandomMoveSD        this distribution\n" );
 		System.out.printf( "  randomMoveMethod  - 0=unbiased choice of open neighbors; 1=pick first\n" );
@@ -1099,6 +1575,36 @@ public class Model extends ModelParameters {
 		
 		System.out.printf( "\n" );
 		System.out.printf( "  initialSteps   - inject Pher, diffuse before adding ants\n" );
+		System.out.printf( "  worldType      - 0=Repast Object2DGrid; 1=flat int grid (faster, less memory)\n" );
+		System.out.printf( "                   2=chunked world and pSpace, tiles made as needed (huge worlds)\n" );
+		System.out.printf( "  spawnRegion    - where new ants are born: 0=left or top edge; 1=all edges;\n" );
+		System.out.printf( "                   2=spawnRectangles, e.g. sRects=0:0:9:9/90:90:99:99\n" );
+		System.out.printf( "  pherSpaceType  - 0=Repast Diffuse2D; 1=PheromoneField (faster; to check\n" );
+		System.out.printf( "                   it matches, java AntPheromones.PheromoneField);\n" );
+		System.out.printf( "                   2=PheromoneField if it gives the same values as\n" );
+		System.out.printf( "                   Diffuse2D (checked at the start), else Diffuse2D\n" );
+		System.out.printf( "  diffusionThreads - threads to diffuse with (PheromoneField), same results\n" );
+		System.out.printf( "  diffusionKernel - 0=exact (Diffuse2D's order of operations); 1=fast (SIMD friendly,\n" );
+		System.out.printf( "                   differs by rounding only, < 1e-12 relative)\n" );
+		System.out.printf( "  pherStorage    - with PheromoneField: 0=double; 1=float (half the memory);\n" );
+		System.out.printf( "                   2=16 bit fixed point (1/4, less accurate, see CompactPheromoneField)\n" );
+		System.out.printf( "  pherEpsilon    - diffused values below this are set to 0, so only the area with\n" );
+		System.out.printf( "                   pheromone is diffused (0=exact; PheromoneField or worldType=2)\n" );
+		System.out.printf( "  warmupCacheDir - if not empty, save the pSpace after the initialSteps warmup\n" );
+		System.out.printf( "                   in this directory, and load it on later runs (any seed)\n" );
+		System.out.printf( "  sharedPheromone - 1=runs done one after another in this JVM with the same\n" );
+		System.out.printf( "                   pheromone parameters compute the pSpace once and replay\n" );
+		System.out.printf( "                   it, step by step (the ants never change it); same results.\n" );
+		System.out.printf( "                   Keeps a copy of the field per step, up to 1/4 of the heap\n" );
+		System.out.printf( "                   (past that, runs go on with their own pSpace)\n" );
+		System.out.printf( "  spectralWarmup - 1=compute the initialSteps warmup without stepping the field\n" );
+		System.out.printf( "                   (worldType 0,1; see SpectralPheromoneField; same values up to rounding)\n" );
+		System.out.printf( "  pherRecountFrequency - the pSpace keeps totalPheromone as it goes; every this\n" );
+		System.out.printf( "                   many steps sum the whole field again (0=never)\n" );
+		System.out.printf( "  nborCountFields - 1=keep per-cell neighbor counts (fast stats, 2 bytes/cell)\n" );
+		System.out.printf( "                   (not used with worldType=2)\n" );
+		System.out.printf( "  antPopulationType - 0=ArrayList of Ants; 1=an array per ant field (less memory,\n" );
+		System.out.printf( "                   faster stats; same runs, but rwor shuffles differently)\n" );
 		System.out.printf( "\n" );
 		System.out.printf( "  pherReportFileName - if not null, writes pheromone values\n" );
 		System.out.printf( "  pherReportFrequency - how often it writes the values\n" );
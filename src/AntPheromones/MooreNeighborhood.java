@@ -0,0 +1,154 @@
+package  AntPheromones;
+
+/**
+MooreNeighborhood
+
+Precomputed offset tables for scanning the Moore neighborhood of
+a given radius on a torus of a given size, so the hot loops
+(Ant.findMostPheromoneOpenNeighborCell, getOpenNeighborLocations, etc)
+don't call xnorm/ynorm for every probe.
+
+For each of the (2r+1)^2 cells in the neighborhood (center included),
+in scan order, we store:
+* dx[k], dy[k]  -- the raw offsets
+* offset[k]     -- the flat index offset, dy*xSize + dx,
+                   for worlds that store cell x,y at y*xSize + x
+Cells at least radius away from every edge are "interior", and
+their neighbors are just x+dx[k], y+dy[k] (or index+offset[k]).
+Only border cells need the wrapped values (wrapX, wrapY).
+
+The scan order can be by rows (y outer, x inner, as getOpenNeighborLocations)
+or by columns (x outer, y inner, as the Ant pheromone search),
+so results (and picks from ties) are the same as the old loops.
+
+Use get() to share the tables for a world size.
+
+For radius 1 there is also an allocation-free way to ask about
+open cells: worlds return an 8-bit "open neighbor mask", with bit k set
+if the k-th neighbor (MASK_DX[k], MASK_DY[k]; row order, no center) is open.
+*/
+
+public class MooreNeighborhood {
+
+	public final int	radius;
+	public final int	xSize, ySize;
+	public final int	size;		// number of cells, (2r+1)^2
+	public final boolean byColumns;	// scan order
+	public final int[]	dx, dy;		// raw offsets, in scan order
+	public final int[]	offset;		// flat index offsets, in scan order
+
+	// the 8 neighbors for open neighbor masks, in row order (no center)
+	public static final int[] MASK_DX = { -1,  0,  1, -1, 1, -1, 0, 1 };
+	public static final int[] MASK_DY = { -1, -1, -1,  0, 0,  1, 1, 1 };
+
+	// the last few made, so every ant step doesn't build new tables
+	private static volatile MooreNeighborhood[] cache = new MooreNeighborhood[8];
+
+	public MooreNeighborhood ( int xSize, int ySize, int radius, boolean byColumns ) {
+		this.radius = radius;
+		this.xSize = xSize;
+		this.ySize = ySize;
+		this.byColumns = byColumns;
+		int w = 2 * radius + 1;
+		size = w * w;
+		dx = new int[size];
+		dy = new int[size];
+		offset = new int[size];
+		int k = 0;
+		for ( int outer = -radius; outer <= radius; ++outer ) {
+			for ( int inner = -radius; inner <= radius; ++inner ) {
+				dx[k] = byColumns ? outer : inner;
+				dy[k] = byColumns ? inner : outer;
+				offset[k] = dy[k] * xSize + dx[k];
+				++k;
+			}
+		}
+	}
+
+	/**
+	 * get
+	 * @return (shared) tables for the given world size, radius and scan order.
+	 */
+	public static MooreNeighborhood get ( int xSize, int ySize, int radius, boolean byColumns ) {
+		MooreNeighborhood[] c = cache;
+		for ( int i = 0; i < c.length; ++i ) {
+			MooreNeighborhood n = c[i];
+			if ( n != null && n.radius == radius && n.byColumns == byColumns
+				 && n.xSize == xSize && n.ySize == ySize )
+				return n;
+		}
+		MooreNeighborhood n = new MooreNeighborhood( xSize, ySize, radius, byColumns );
+		synchronized ( MooreNeighborhood.class ) {
+			MooreNeighborhood[] newCache = new MooreNeighborhood[ c.length ];
+			System.arraycopy( c, 0, newCache, 1, c.length - 1 );
+			newCache[0] = n;
+			cache = newCache;
+		}
+		return n;
+	}
+
+	/**
+	 * isInterior
+	 * @return true if no neighbor of x,y wraps around an edge.
+	 */
+	public boolean isInterior ( int x, int y ) {
+		return x >= radius && y >= radius && x < xSize - radius && y < ySize - radius;
+	}
+
+	/**
+	 * wrapX, wrapY
+	 * @return x+dx[k] (y+dy[k]) normalized onto the torus
+	 */
+	public int wrapX ( int x, int k ) {
+		return wrap( x + dx[k], xSize );
+	}
+	public int wrapY ( int y, int k ) {
+		return wrap( y + dy[k], ySize );
+	}
+
+	/**
+	 * fillCellIndexes
+	 * write the flat (y*xSize + x) index of each neighborhood cell
+	 * of x,y into out[], in scan order, wrapping only if needed.
+	 * @return number written (= size)
+	 */
+	public int fillCellIndexes ( int x, int y, int[] out ) {
+		if ( isInterior( x, y ) ) {
+			int center = y * xSize + x;
+			for ( int k = 0; k < size; ++k )
+				out[k] = center + offset[k];
+		}
+		else {
+			for ( int k = 0; k < size; ++k )
+				out[k] = wrap( y + dy[k], ySize ) * xSize + wrap( x + dx[k], xSize );
+		}
+		return size;
+	}
+
+	/**
+	 * nthSetBit
+	 * @return the bit number of the n-th (from 0) lowest set bit in mask,
+	 * e.g., which neighbor to pick from an open neighbor mask.
+	 */
+	public static int nthSetBit ( int mask, int n ) {
+		for ( int i = 0; i < n; ++i )
+			mask &= mask - 1;	// clear lowest set bit
+		return Integer.numberOfTrailingZeros( mask );
+	}
+
+	/**
+	 * wrap
+	 * @return v normalized into [0,n).
+	 * One (well predicted) range test, then for v in [-n,2n) -- any
+	 * neighborhood with radius <= n -- the wrap itself is done with
+	 * masks, not branches; values outside that range fall back to %.
+	 */
+	public static int wrap ( int v, int n ) {
+		if ( v < -n || v >= 2 * n )
+			return ( ( v % n ) + n ) % n;
+		v += n & ( v >> 31 );				// add n if v < 0
+		v -= n & ( ( n - 1 - v ) >> 31 );	// subtract n if v >= n
+		return v;
+	}
+
+}
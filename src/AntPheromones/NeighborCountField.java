@@ -0,0 +1,90 @@
+package  AntPheromones;
+
+/**
+NeighborCountField
+
+For every cell, the number of occupied cells within distance d
+(Moore neighborhood), kept up to date as the world changes, so
+"how many neighbors does the bug at x,y have?" is one array lookup
+instead of a Repast getMooreNeighbors call (which builds a Vector).
+
+It is an OccupancyListener: each time a cell fills (empties),
+we add (subtract) one to the counts of the (2d+1)^2 cells around it.
+The counts include the cell itself, so getNumberOfNeighbors subtracts
+that out.  Counts are bytes, so d can be at most 5.
+
+NB: like Object2DGrid.getMooreNeighbors (what the bugs used to call)
+this does NOT wrap around the edges of the world.
+*/
+
+public class NeighborCountField implements OccupancyListener {
+
+	protected TorusSpace	world;
+	protected int			radius;
+	protected int			xSize, ySize;
+	protected byte[]		counts;		// occupied cells within radius, x,y at y*xSize + x
+
+	public NeighborCountField ( TorusSpace w, int d ) {
+		if ( d < 0 || d > 5 ) {
+			System.err.printf( "\n** NeighborCountField: radius %d not in 0..5!\n", d );
+			d = Math.max( 0, Math.min( d, 5 ) );
+		}
+		world = w;
+		radius = d;
+		xSize = w.getSizeX();
+		ySize = w.getSizeY();
+		counts = new byte[ xSize * ySize ];
+	}
+
+	public int getRadius () { return radius; }
+
+	/**
+	 * attach
+	 * count what is in the world now, and start listening for changes.
+	 */
+	public void attach () {
+		java.util.Arrays.fill( counts, (byte) 0 );
+		for ( int y = 0; y < ySize; ++y ) {
+			for ( int x = 0; x < xSize; ++x ) {
+				if ( !world.isOpen( x, y ) )
+					add( x, y, 1 );
+			}
+		}
+		world.addOccupancyListener( this );
+	}
+
+	public void detach () {
+		world.removeOccupancyListener( this );
+	}
+
+	/**
+	 * getNumberOfNeighbors
+	 * @return number of objects within radius of x,y, not counting x,y itself.
+	 */
+	public int getNumberOfNeighbors ( int x, int y ) {
+		int c = counts[ y * xSize + x ];
+		if ( !world.isOpen( x, y ) )
+			--c;
+		return c;
+	}
+
+	public void cellOccupied ( int x, int y ) {
+		add( x, y, 1 );
+	}
+
+	public void cellEmptied ( int x, int y ) {
+		add( x, y, -1 );
+	}
+
+	// add delta to the counts of all cells within radius of x,y (clipped to the world)
+	private void add ( int x, int y, int delta ) {
+		int minX = Math.max( 0, x - radius ), maxX = Math.min( xSize - 1, x + radius );
+		int minY = Math.max( 0, y - radius ), maxY = Math.min( ySize - 1, y + radius );
+		for ( int ty = minY; ty <= maxY; ++ty ) {
+			int row = ty * xSize;
+			for ( int tx = minX; tx <= maxX; ++tx )
+				counts[ row + tx ] += delta;
+		}
+	}
+
+}
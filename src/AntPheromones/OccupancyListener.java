@@ -0,0 +1,18 @@
+package  AntPheromones;
+
+/**
+* OccupancyListener interface.
+*
+* Objects that want to keep their own index of which cells in a
+* TorusSpace are occupied (e.g., a SpawnRegion) implement this, and
+* are registered with world.addOccupancyListener().
+* The world calls these only when a cell actually changes between 
+* empty and occupied (puts, moves and removes).
+*/
+
+public interface OccupancyListener {
+
+	public void cellOccupied( int x, int y );
+	public void cellEmptied( int x, int y );
+
+}
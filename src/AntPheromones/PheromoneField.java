@@ -0,0 +1,886 @@
+package  AntPheromones;
+
+/**
+PheromoneField
+
+Our own PheromoneSpace: the pheromone values in two flat double[]
+buffers (read and write), with a border of halo cells (see below) all
+around, so cell x,y is at index offset + y * stride + x, where
+stride = xSize + 2*halo and offset = halo * stride + halo.
+It is meant to give the same numbers as the Repast Diffuse2D (same
+kernel, same order of operations, wrapping around the edges; validate()
+checks that, run it with  java AntPheromones.PheromoneField ):
+   avg  = ( 4*(N + E + S + W) + NW + NE + SE + SW ) / 20
+   new  = evap * ( old + K * (avg - old) )
+but without going through generic accessors for every cell, and
+without copying the whole write buffer into the read buffer:
+* diffuse() computes the write buffer from the read buffer and then
+  just swaps the two, so the old read buffer is the new write buffer.
+* putValueAt() writes into the write buffer and remembers the cell, and
+  update() copies just those cells into the read buffer.
+* inject() (the Model's exogenous pheromone) changes the cell in both
+  buffers at once.
+That is all the model ever needs, since the write buffer is otherwise
+only read after diffuse() has filled all of it.  So a whole step
+(diffuse, evaporate, inject, publish) is one pass over the field.
+
+diffuse() can be split over several threads (setNumThreads): the rows
+are cut into one stripe per thread.  Since every thread only reads the
+read buffer and only writes its own rows of the write buffer, the rows
+just above and below a stripe are read straight from the
+shared read buffer, and the results are bit-for-bit the same as with
+one thread.
+
+There are two diffusion kernels (setKernel):
+* exactKernel -- the Diffuse2D order of operations (see validate).
+* fastKernel  -- first sums the rows above and below each cell into a
+  scratch row, v[x] = N + S, so for each cell
+     sum = 4*(v[x] + W + E) + v[x-1] + v[x+1]
+     new = evap*(1-K) * old + (evap*K/20) * sum
+  That is 6 loads instead of 9 and simple loops over plain arrays, which
+  the JIT can compile into SIMD instructions.  The values differ from the
+  exact kernel only by rounding (see testFastKernel; relative differences
+  stay below FAST_KERNEL_TOLERANCE).
+  It only helps while the field fits in the cache: on one AVX-512 core
+  (JDK 17) a step took 2.3 ms instead of 2.8 ms at 1024x1024, but about
+  the same, 12 vs 11 ms, at 2048x2048, where memory bandwidth limits both.
+
+Only the part of the field that can have pheromone is diffused.
+We keep a bounding box of the non-zero cells of each buffer (every cell
+outside it is 0), and diffuse() computes just the read box grown by
+one cell (since pheromone spreads one cell per step), plus the write box
+(so old values there are overwritten).  Afterwards the new read box is
+shrunk to fit the non-zero cells (by scanning in from its edges).
+A box that grows past an edge of the world covers that whole dimension.
+Cells outside the box would have diffused to exactly 0 anyway, so this
+gives the same values as a full sweep, but early on (pheromone near the
+source only) it costs in proportion to the area with pheromone,
+not sizeX * sizeY.
+With exact arithmetic the faint edge of the pheromone keeps spreading,
+so the box eventually fills the world.  setEpsilon( eps ) sets any
+new value below eps to 0 instead, which keeps the box to the area
+with at least eps pheromone (no longer the same values as Diffuse2D, of course).
+
+The total of the field is kept as we go, so getTotalValue() is O(1):
+diffuse() sums each row it computes (while the row is still in the
+cache) and then adds up the row sums, in row order (so the total
+doesn't depend on the number of threads); update() adds the change
+in each cell it copies.  recountTotalValue() sums the whole field
+again (in the same order), e.g., to check for drift.
+
+runWarmup() does the Model's warmup (inject at the source, diffuse,
+over and over, with nothing looking at the field in between) with
+temporal blocking: it cuts the field into BLOCK_TILE x BLOCK_TILE tiles,
+and for each tile copies the tile plus blockSteps cells around it into
+a small local buffer (which stays in the cache), and does blockSteps
+steps there, each step computing one cell less all around (the outer
+cells would need values from outside the buffer).  After blockSteps
+steps just the tile itself is left, and it goes into the write buffer.
+The cells around the tile are computed again by the tiles next to it,
+but the field goes through memory once per blockSteps steps instead of
+once per step.  Every cell is computed with the same operations as
+diffuse() (and the source gets the same injections), so the values
+are exactly the same as stepping (validate() checks this too).
+Each job's two tile buffers are made once and kept for later passes.
+That only pays when memory is the limit, with several threads sharing
+it: on one core (AVX-512 Xeon, JDK 17) a step is about 2.7 ns a cell
+either way, and blocking saved only 0-7% (11.6 vs 11.0-11.7 ms at
+2048x2048, 49.8 vs 46.3-47.1 ms at 4096x4096, blockSteps 8 and 16).
+
+The border (the "halo", or ghost cells, setHalo(); 1 by default) holds
+copies of the cells on the opposite edges of the torus: cell x,y with
+x or y up to halo outside the world has the value of x,y wrapped into
+the world.  So the diffusion loops never wrap anything (the neighbors of
+cell i are always i-1, i+1, i-stride, i+stride, ...), and getValueAt()
+can be asked about cells up to getHalo() outside the world (as
+Ant.findMostPheromoneOpenNeighbor does), without xnorm/ynorm.
+The halo of the write buffer is refreshed after diffuse() (if it
+computed cells near an edge), and putValueAt(), update() and inject()
+write the copies of cells near an edge along with them.
+
+For the GUI, getDisplaySpace() returns a ValueDisplayAdapter.
+*/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class PheromoneField implements PheromoneSpace {
+
+	protected int		xSize, ySize;
+	protected double	diffusionK, evapRate;
+	protected double[]	read, write;
+	protected int		halo = 1;				// ghost cells on each side
+	protected int		stride, offset;			// cell x,y is at offset + y * stride + x
+
+	protected int[]		dirty = new int[16];	// cells put since the last update()
+	protected int		numDirty = 0;
+
+	protected int		numThreads = 1;
+	protected ExecutorService pool;				// null if numThreads == 1
+	protected List<Callable<Object>> stripes;	// one diffuseRows job per thread
+
+	public static final int exactKernel = 0;
+	public static final int fastKernel = 1;
+	public static final double FAST_KERNEL_TOLERANCE = 1e-12;  // max relative difference
+
+	protected int		kernel = exactKernel;
+	protected double[][] scratch;				// a row for the fast kernel, per stripe
+
+	protected double	epsilon = 0.0;			// new values below this are 0 (0: exact)
+
+	public static final int BLOCK_TILE = 256;	// runWarmup() tile size
+	protected double[][] blockCur, blockNext;	// runWarmup()'s tile copies, per job (kept for reuse)
+	protected int		blockSteps = 8;			// steps per pass in runWarmup() (1: no blocking)
+
+	// bounding boxes (inclusive) of the non-zero cells in read and write
+	// (empty if x0 > x1); all cells outside them are 0.
+	protected int		readX0, readX1, readY0, readY1;
+	protected int		writeX0, writeX1, writeY0, writeY1;
+	protected int		fromX, toX;				// columns diffuse() is computing
+	protected int[]		stripeFromY, stripeToY;	// rows each stripe is computing
+
+	protected double	total = 0;				// of read, kept by diffuse() and update()
+	protected double[]	rowTotal;				// of each row diffuse() computed
+
+	protected ValueDisplayAdapter displaySpace;		// made only if asked for
+
+	public PheromoneField ( double k, double e, int sizeX, int sizeY ) {
+		diffusionK = k;
+		evapRate = e;
+		xSize = sizeX;
+		ySize = sizeY;
+		stride = xSize + 2 * halo;
+		offset = halo * stride + halo;
+		read = new double[ stride * ( ySize + 2 * halo ) ];
+		write = new double[ stride * ( ySize + 2 * halo ) ];
+		scratch = new double[1][ xSize + 2 ];
+		rowTotal = new double[ ySize ];
+		stripeFromY = new int[1];
+		stripeToY = new int[1];
+		readX0 = writeX0 = xSize;   // both empty
+		readX1 = writeX1 = -1;
+		readY0 = writeY0 = ySize;
+		readY1 = writeY1 = -1;
+	}
+
+	public int getSizeX () { return xSize; }
+	public int getSizeY () { return ySize; }
+
+	public int getNumThreads () { return numThreads; }
+
+	public double getEpsilon () { return epsilon; }
+	public void setEpsilon ( double eps ) { epsilon = Math.max( 0.0, eps ); }
+
+	/**
+	 * getActiveArea
+	 * @return number of cells in the box diffuse() is working on.
+	 */
+	public int getActiveArea () {
+		if ( readX0 > readX1 )
+			return 0;
+		return ( readX1 - readX0 + 1 ) * ( readY1 - readY0 + 1 );
+	}
+
+	public int getKernel () { return kernel; }
+	public void setKernel ( int k ) {
+		if ( k != exactKernel && k != fastKernel ) {
+			System.err.printf( "\n** PheromoneField: illegal kernel %d!\n", k );
+			return;
+		}
+		kernel = k;
+	}
+
+	/**
+	 * setNumThreads
+	 * diffuse with n threads (n=1: just this thread, no pool).
+	 * Call setNumThreads(1) when done with the field, to stop the threads.
+	 */
+	public void setNumThreads ( int n ) {
+		if ( pool != null ) {
+			pool.shutdown();
+			pool = null;
+			stripes = null;
+		}
+		numThreads = Math.max( 1, Math.min( n, ySize ) );
+		scratch = new double[ numThreads ][ xSize + 2 ];
+		stripeFromY = new int[ numThreads ];
+		stripeToY = new int[ numThreads ];
+		if ( numThreads == 1 )
+			return;
+
+		pool = Executors.newFixedThreadPool( numThreads, new ThreadFactory() {
+				public Thread newThread ( Runnable r ) {
+					Thread t = new Thread( r, "PheromoneField diffuse" );
+					t.setDaemon( true );	// don't keep the model from exiting
+					return t;
+				}
+			} );
+		stripes = new ArrayList<Callable<Object>>();
+		for ( int s = 0; s < numThreads; ++s ) {
+			final int stripe = s;
+			stripes.add( new Callable<Object>() {
+					public Object call () {
+						diffuseRows( stripeFromY[stripe], stripeToY[stripe], stripe );
+						return null;
+					}
+				} );
+		}
+	}
+
+	public void setDiffusionConstant ( double k ) { diffusionK = k; }
+	public void setEvaporationRate ( double e ) { evapRate = e; }
+
+	/**
+	 * getHalo
+	 * @return how far outside the world getValueAt() can be asked.
+	 */
+	public int getHalo () { return halo; }
+
+	/**
+	 * setHalo
+	 * make the border h cells wide (at least 1), e.g., the radius of
+	 * the ants' neighborhood, so they never have to wrap.
+	 */
+	public void setHalo ( int h ) {
+		h = Math.max( 1, h );
+		if ( h == halo )
+			return;
+		int oldStride = stride, oldOffset = offset;
+		double[] oldRead = read, oldWrite = write;
+		halo = h;
+		stride = xSize + 2 * halo;
+		offset = halo * stride + halo;
+		read = new double[ stride * ( ySize + 2 * halo ) ];
+		write = new double[ stride * ( ySize + 2 * halo ) ];
+		for ( int y = 0; y < ySize; ++y ) {
+			System.arraycopy( oldRead, oldOffset + y * oldStride, read, offset + y * stride, xSize );
+			System.arraycopy( oldWrite, oldOffset + y * oldStride, write, offset + y * stride, xSize );
+		}
+		refreshHalo( read, 0, xSize - 1, 0, ySize - 1 );
+		refreshHalo( write, 0, xSize - 1, 0, ySize - 1 );
+		for ( int d = 0; d < numDirty; ++d ) {
+			int i = dirty[d] - oldOffset;
+			dirty[d] = offset + ( i / oldStride ) * stride + i % oldStride;
+		}
+	}
+
+	public double getValueAt ( int x, int y ) {
+		return read[ offset + y * stride + x ];
+	}
+
+	public void putValueAt ( int x, int y, double v ) {
+		int i = offset + y * stride + x;
+		setCell( write, x, y, v );
+		if ( v != 0.0 ) {
+			writeX0 = Math.min( writeX0, x );  writeX1 = Math.max( writeX1, x );
+			writeY0 = Math.min( writeY0, y );  writeY1 = Math.max( writeY1, y );
+		}
+		if ( numDirty == dirty.length )
+			dirty = java.util.Arrays.copyOf( dirty, 2 * numDirty );
+		dirty[ numDirty++ ] = i;
+	}
+
+	public void update () {
+		for ( int d = 0; d < numDirty; ++d ) {
+			int i = dirty[d];
+			int x = ( i - offset ) % stride, y = ( i - offset ) / stride;
+			total += write[i] - read[i];
+			setCell( read, x, y, write[i] );
+			if ( read[i] != 0.0 ) {
+				readX0 = Math.min( readX0, x );  readX1 = Math.max( readX1, x );
+				readY0 = Math.min( readY0, y );  readY1 = Math.max( readY1, y );
+			}
+		}
+		numDirty = 0;
+	}
+
+	/**
+	 * inject
+	 * add amount at x,y (not over max), in both buffers, so there is
+	 * nothing for update() to do.
+	 */
+	public void inject ( int x, int y, double amount, double max ) {
+		double old = read[ offset + y * stride + x ];
+		double v = amount + old;
+		v = Math.min( v, max );
+		setCell( read, x, y, v );
+		setCell( write, x, y, v );
+		if ( v != 0.0 ) {
+			readX0 = Math.min( readX0, x );  readX1 = Math.max( readX1, x );
+			readY0 = Math.min( readY0, y );  readY1 = Math.max( readY1, y );
+			writeX0 = Math.min( writeX0, x );  writeX1 = Math.max( writeX1, x );
+			writeY0 = Math.min( writeY0, y );  writeY1 = Math.max( writeY1, y );
+		}
+		total += v - old;
+	}
+
+	/**
+	 * diffuse
+	 * diffuse from read into write, then swap them.
+	 * Anything put (and not yet update()d) is lost, as with Diffuse2D.
+	 */
+	public void diffuse () {
+		// the read box grown by a cell (or to a whole dimension, if it hits an edge)
+		int x0 = xSize, x1 = -1, y0 = ySize, y1 = -1;
+		if ( readX0 <= readX1 ) {
+			x0 = readX0 - 1;  x1 = readX1 + 1;
+			if ( x0 < 0 || x1 >= xSize ) {
+				x0 = 0;  x1 = xSize - 1;
+			}
+			y0 = readY0 - 1;  y1 = readY1 + 1;
+			if ( y0 < 0 || y1 >= ySize ) {
+				y0 = 0;  y1 = ySize - 1;
+			}
+		}
+		// plus the write box, to clear out old values
+		x0 = Math.min( x0, writeX0 );  x1 = Math.max( x1, writeX1 );
+		y0 = Math.min( y0, writeY0 );  y1 = Math.max( y1, writeY1 );
+
+		double sum = 0;
+		if ( x0 <= x1 ) {
+			fromX = x0;
+			toX = x1 + 1;
+			if ( pool == null )
+				diffuseRows( y0, y1 + 1, 0 );
+			else
+				diffuseStripes( y0, y1 + 1 );
+			for ( int y = y0; y <= y1; ++y )
+				sum += rowTotal[y];
+			refreshHalo( write, x0, x1, y0, y1 );
+		}
+		total = sum;
+		double[] t = read;
+		read = write;
+		write = t;
+		writeX0 = readX0;  writeX1 = readX1;
+		writeY0 = readY0;  writeY1 = readY1;
+		shrinkReadBox( x0, x1, y0, y1 );
+		numDirty = 0;
+	}
+
+	public int getBlockSteps () { return blockSteps; }
+	public void setBlockSteps ( int n ) { blockSteps = Math.max( 1, n ); }
+
+	/**
+	 * runWarmup
+	 * steps times inject( sx, sy, amount, max ) and diffuse(), as the Model's
+	 * warmup does, blockSteps steps per pass over the field (see above).
+	 */
+	public void runWarmup ( int steps, int sx, int sy, double amount, double max ) {
+		while ( steps > 0 ) {
+			int n = Math.min( steps, blockSteps );
+			if ( n == 1 ) {
+				inject( sx, sy, amount, max );
+				diffuse();
+				--steps;
+				continue;
+			}
+			diffuseBlocked( n, sx, sy, amount, max );
+			steps -= n;
+		}
+	}
+
+	// n steps of inject and diffuse, tile by tile, into write; then swap.
+	private void diffuseBlocked ( int n, int sx, int sy, double amount, double max ) {
+		// where the result can be non-zero: the read box and the source,
+		// grown by n (or to a whole dimension), plus the write box to clear it
+		int x0 = Math.min( readX0, sx ) - n, x1 = Math.max( readX1, sx ) + n;
+		if ( x0 < 0 || x1 >= xSize ) {
+			x0 = 0;  x1 = xSize - 1;
+		}
+		int y0 = Math.min( readY0, sy ) - n, y1 = Math.max( readY1, sy ) + n;
+		if ( y0 < 0 || y1 >= ySize ) {
+			y0 = 0;  y1 = ySize - 1;
+		}
+		x0 = Math.min( x0, writeX0 );  x1 = Math.max( x1, writeX1 );
+		y0 = Math.min( y0, writeY0 );  y1 = Math.max( y1, writeY1 );
+
+		final int fx0 = x0, fx1 = x1, fy0 = y0, fy1 = y1, fn = n;
+		final int fsx = sx, fsy = sy;
+		final double fAmount = amount, fMax = max;
+		final int tilesX = ( x1 - x0 ) / BLOCK_TILE + 1;
+		final int numTiles = tilesX * ( ( y1 - y0 ) / BLOCK_TILE + 1 );
+		List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+		int numJobs = ( pool == null ) ? 1 : Math.min( numThreads, numTiles );
+		int size = ( BLOCK_TILE + 2 * n ) * ( BLOCK_TILE + 2 * n );
+		if ( blockCur == null || blockCur.length < numJobs || blockCur[0].length < size ) {
+			blockCur = new double[ numJobs ][ size ];
+			blockNext = new double[ numJobs ][ size ];
+		}
+		for ( int j = 0; j < numJobs; ++j ) {
+			final int first = j, every = numJobs;
+			final double[] cur = blockCur[j], next = blockNext[j];
+			jobs.add( new Callable<Object>() {
+					public Object call () {
+						for ( int t = first; t < numTiles; t += every ) {
+							int tx0 = fx0 + ( t % tilesX ) * BLOCK_TILE;
+							int ty0 = fy0 + ( t / tilesX ) * BLOCK_TILE;
+							blockTile( tx0, Math.min( tx0 + BLOCK_TILE, fx1 + 1 ),
+									   ty0, Math.min( ty0 + BLOCK_TILE, fy1 + 1 ),
+									   fn, fsx, fsy, fAmount, fMax, cur, next );
+						}
+						return null;
+					}
+				} );
+		}
+		try {
+			if ( pool == null )
+				jobs.get( 0 ).call();
+			else {
+				for ( Future<Object> f : pool.invokeAll( jobs ) )
+					f.get();	// throws if the job did
+			}
+		}
+		catch ( Exception e ) {
+			System.err.printf( "\n** PheromoneField: blocked diffuse failed: %s\n", e );
+			throw new RuntimeException( e );
+		}
+		refreshHalo( write, x0, x1, y0, y1 );
+
+		double[] t = read;
+		read = write;
+		write = t;
+		writeX0 = readX0;  writeX1 = readX1;
+		writeY0 = readY0;  writeY1 = readY1;
+		shrinkReadBox( x0, x1, y0, y1 );
+		numDirty = 0;
+		recountTotalValue();	// sums the same values in the same order as diffuse() would
+	}
+
+	/**
+	 * blockTile
+	 * n steps for write columns gx0..gx1-1, rows gy0..gy1-1: copy them
+	 * and n cells around them (wrapped) from read into cur, then each step
+	 * inject at the source (wherever it is in cur) and diffuse one cell
+	 * less all around from cur into next, and swap cur and next.
+	 */
+	private void blockTile ( int gx0, int gx1, int gy0, int gy1, int n,
+							 int sx, int sy, double amount, double max,
+							 double[] cur, double[] next ) {
+		int w = gx1 - gx0 + 2 * n, h = gy1 - gy0 + 2 * n;
+		for ( int ly = 0; ly < h; ++ly ) {
+			int gy = offset + wrap( gy0 - n + ly, ySize ) * stride;
+			int gx = wrap( gx0 - n, xSize );
+			for ( int lx = 0; lx < w; ++lx ) {
+				cur[ ly * w + lx ] = read[ gy + gx ];
+				if ( ++gx == xSize )
+					gx = 0;
+			}
+		}
+		double k = diffusionK, e = evapRate, eps = epsilon;
+		double a = evapRate * ( 1.0 - diffusionK );		// fastKernel weights
+		double b = evapRate * diffusionK / 20.0;
+		boolean fast = ( kernel == fastKernel );
+		for ( int l = 0; l < n; ++l ) {
+			// inject at the source (maybe in several places, if the world is small)
+			for ( int ly = l; ly < h - l; ++ly ) {
+				if ( wrap( gy0 - n + ly, ySize ) != sy )
+					continue;
+				for ( int lx = l; lx < w - l; ++lx ) {
+					if ( wrap( gx0 - n + lx, xSize ) == sx ) {
+						double v = amount + cur[ ly * w + lx ];
+						cur[ ly * w + lx ] = Math.min( v, max );
+					}
+				}
+			}
+			for ( int ly = l + 1; ly < h - l - 1; ++ly ) {
+				int row = ly * w, up = row - w, down = row + w;
+				int from = l + 1, to = w - l - 1;
+				if ( fast ) {
+					for ( int x = from; x < to; ++x ) {
+						next[row+x] = a * cur[row+x]
+							+ b * ( 4 * ( ( cur[up+x] + cur[down+x] ) + cur[row+x-1] + cur[row+x+1] )
+									+ ( cur[up+x-1] + cur[down+x-1] ) + ( cur[up+x+1] + cur[down+x+1] ) );
+					}
+				}
+				else {
+					for ( int x = from; x < to; ++x ) {
+						double sum = 4 * ( cur[up+x] + cur[row+x+1] + cur[down+x] + cur[row+x-1] )
+							+ cur[up+x-1] + cur[up+x+1] + cur[down+x+1] + cur[down+x-1];
+						double old = cur[row+x];
+						next[row+x] = e * ( old + k * ( sum / 20.0 - old ) );
+					}
+				}
+				if ( eps > 0.0 ) {
+					for ( int x = from; x < to; ++x ) {
+						if ( next[row+x] < eps )
+							next[row+x] = 0.0;
+					}
+				}
+			}
+			double[] t = cur;  cur = next;  next = t;
+		}
+		for ( int ly = n; ly < h - n; ++ly ) {
+			int g = offset + ( gy0 + ly - n ) * stride + gx0;
+			System.arraycopy( cur, ly * w + n, write, g, w - 2 * n );
+		}
+	}
+
+	// set cell x,y of a to v, and its copies in the halo (if it is near an edge)
+	private void setCell ( double[] a, int x, int y, double v ) {
+		if ( x >= halo && x < xSize - halo && y >= halo && y < ySize - halo ) {
+			a[ offset + y * stride + x ] = v;
+			return;
+		}
+		// every x', y' that wraps to x, y, from -halo to size+halo-1
+		for ( int cy = y - ( y + halo ) / ySize * ySize; cy < ySize + halo; cy += ySize )
+			for ( int cx = x - ( x + halo ) / xSize * xSize; cx < xSize + halo; cx += xSize )
+				a[ offset + cy * stride + cx ] = v;
+	}
+
+	/**
+	 * refreshHalo
+	 * copy the cells near the edges into the halo of a, after cells
+	 * x0..x1, y0..y1 have changed: the side columns of rows y0..y1, then
+	 * (if the rows near the top or bottom changed) whole rows, corners and all.
+	 */
+	protected void refreshHalo ( double[] a, int x0, int x1, int y0, int y1 ) {
+		if ( x0 < halo || x1 >= xSize - halo ) {
+			for ( int y = y0; y <= y1; ++y ) {
+				int row = offset + y * stride;
+				for ( int h = 1; h <= halo; ++h ) {
+					a[ row - h ] = a[ row + wrap( -h, xSize ) ];
+					a[ row + xSize - 1 + h ] = a[ row + wrap( xSize - 1 + h, xSize ) ];
+				}
+			}
+		}
+		if ( y0 < halo || y1 >= ySize - halo ) {
+			for ( int h = 1; h <= halo; ++h ) {	// padded row y starts at ( y + halo ) * stride
+				System.arraycopy( a, ( wrap( -h, ySize ) + halo ) * stride,
+								  a, ( halo - h ) * stride, stride );
+				System.arraycopy( a, ( wrap( ySize - 1 + h, ySize ) + halo ) * stride,
+								  a, ( ySize - 1 + h + halo ) * stride, stride );
+			}
+		}
+	}
+
+	// v wrapped into 0..size-1 (v may be more than a size off)
+	private static int wrap ( int v, int size ) {
+		v %= size;
+		return ( v < 0 ) ? v + size : v;
+	}
+
+	/**
+	 * getTotalValue
+	 * @return the total kept by diffuse() and update().
+	 */
+	public double getTotalValue () {
+		return total;
+	}
+
+	/**
+	 * recountTotalValue
+	 * sum the read box by rows, as diffuse() does, and keep that as the total.
+	 */
+	public double recountTotalValue () {
+		double t = 0;
+		for ( int y = readY0; y <= readY1; ++y ) {   // the rest are 0
+			double rt = 0;
+			for ( int x = readX0; x <= readX1; ++x )
+				rt += read[ offset + y * stride + x ];
+			t += rt;
+		}
+		total = t;
+		return total;
+	}
+
+	/**
+	 * copyValues
+	 * copy the (read copy) values into to, row by row (index y * xSize + x).
+	 */
+	public void copyValues ( double[] to ) {
+		for ( int y = 0; y < ySize; ++y )
+			System.arraycopy( read, offset + y * stride, to, y * xSize, xSize );
+	}
+
+	public Discrete2DSpace getDisplaySpace () {
+		if ( displaySpace == null )
+			displaySpace = new ValueDisplayAdapter( this );
+		return displaySpace;
+	}
+
+	// set the read box to fit the non-zero cells in x0..x1, y0..y1
+	private void shrinkReadBox ( int x0, int x1, int y0, int y1 ) {
+		while ( y0 <= y1 && isZero( x0, x1, y0, y0 ) )
+			++y0;
+		while ( y1 >= y0 && isZero( x0, x1, y1, y1 ) )
+			--y1;
+		if ( y0 > y1 ) {		// all zero
+			readX0 = xSize;  readX1 = -1;
+			readY0 = ySize;  readY1 = -1;
+			return;
+		}
+		while ( isZero( x0, x0, y0, y1 ) )	// there is a non-zero cell, so these stop
+			++x0;
+		while ( isZero( x1, x1, y0, y1 ) )
+			--x1;
+		readX0 = x0;  readX1 = x1;
+		readY0 = y0;  readY1 = y1;
+	}
+
+	// true if every cell of read in x0..x1, y0..y1 is 0
+	private boolean isZero ( int x0, int x1, int y0, int y1 ) {
+		for ( int y = y0; y <= y1; ++y ) {
+			int row = offset + y * stride;
+			for ( int x = x0; x <= x1; ++x ) {
+				if ( read[ row + x ] != 0.0 )
+					return false;
+			}
+		}
+		return true;
+	}
+
+	// cut rows fromY..toY-1 into stripes, run them in the pool,
+	// wait for all of them to finish.
+	private void diffuseStripes ( int fromY, int toY ) {
+		int n = toY - fromY;
+		for ( int s = 0; s < numThreads; ++s ) {
+			stripeFromY[s] = fromY + (int) ( (long) n * s / numThreads );
+			stripeToY[s] = fromY + (int) ( (long) n * ( s + 1 ) / numThreads );
+		}
+		try {
+			for ( Future<Object> f : pool.invokeAll( stripes ) )
+				f.get();	// throws if the stripe did
+		}
+		catch ( Exception e ) {
+			System.err.printf( "\n** PheromoneField: threaded diffuse failed: %s\n", e );
+			throw new RuntimeException( e );
+		}
+	}
+
+	/**
+	 * diffuseRows
+	 * compute columns fromX..toX-1 of rows fromY..toY-1 of write from read,
+	 * using scratch row for the given stripe (if needed).
+	 */
+	protected void diffuseRows ( int fromY, int toY, int stripe ) {
+		if ( kernel == fastKernel ) {
+			diffuseRowsFast( fromY, toY, scratch[stripe] );
+			return;
+		}
+		double[] r = read, w = write;
+		double k = diffusionK, e = evapRate, eps = epsilon;
+		boolean floor = ( eps > 0.0 );
+		int x0 = fromX, x1 = toX;
+		for ( int y = fromY; y < toY; ++y ) {
+			int row = offset + y * stride, up = row - stride, down = row + stride;
+			for ( int x = x0; x < x1; ++x ) {	// the halo has the wrapped neighbors
+				double sum = 4 * ( r[up+x] + r[row+x+1] + r[down+x] + r[row+x-1] )
+					+ r[up+x-1] + r[up+x+1] + r[down+x+1] + r[down+x-1];
+				double old = r[row+x];
+				double v = e * ( old + k * ( sum / 20.0 - old ) );
+				w[row+x] = ( floor && v < eps ) ? 0.0 : v;
+			}
+			rowTotal[y] = sumRow( w, row );
+		}
+	}
+
+	// sum of columns fromX..toX-1 of the row starting at row
+	private double sumRow ( double[] w, int row ) {
+		double s = 0;
+		for ( int x = fromX; x < toX; ++x )
+			s += w[row+x];
+		return s;
+	}
+
+	// the fast kernel: sum the rows above and below into v first
+	// (v[x+1] for column x, from fromX-1 to toX, through the halo).
+	private void diffuseRowsFast ( int fromY, int toY, double[] v ) {
+		double[] r = read, w = write;
+		double a = evapRate * ( 1.0 - diffusionK );		// weight of old value
+		double b = evapRate * diffusionK / 20.0;		// weight of neighbor sum
+		double eps = epsilon;
+		int x0 = fromX, x1 = toX;
+		for ( int y = fromY; y < toY; ++y ) {
+			int row = offset + y * stride, up = row - stride, down = row + stride;
+			for ( int x = x0 - 1; x <= x1; ++x )
+				v[x+1] = r[up+x] + r[down+x];
+			for ( int x = x0; x < x1; ++x ) {
+				w[row+x] = a * r[row+x]
+					+ b * ( 4 * ( v[x+1] + r[row+x-1] + r[row+x+1] ) + v[x] + v[x+2] );
+			}
+			if ( eps > 0.0 ) {
+				for ( int x = fromX; x < toX; ++x ) {
+					if ( w[row+x] < eps )
+						w[row+x] = 0.0;
+				}
+			}
+			rowTotal[y] = sumRow( w, row );
+		}
+	}
+
+	/**
+	 * testFastKernel
+	 * diffuse a random field of the given size for some steps, with
+	 * both kernels, and print (and return) the largest relative difference
+	 * (|fast - exact| / max exact value), which should be
+	 * below FAST_KERNEL_TOLERANCE.
+	 */
+	public static double testFastKernel ( int sizeX, int sizeY, int steps,
+										  double diffusionK, double evapRate ) {
+		PheromoneField exact = new PheromoneField( diffusionK, evapRate, sizeX, sizeY );
+		PheromoneField fast = new PheromoneField( diffusionK, evapRate, sizeX, sizeY );
+		fast.setKernel( fastKernel );
+		java.util.Random rng = new java.util.Random( 1 );
+		for ( int x = 0; x < sizeX; ++x ) {
+			for ( int y = 0; y < sizeY; ++y ) {
+				double v = ( rng.nextInt( 4 ) == 0 ) ? 32000.0 * rng.nextDouble() : 0.0;
+				exact.putValueAt( x, y, v );
+				fast.putValueAt( x, y, v );
+			}
+		}
+		exact.update();
+		fast.update();
+		for ( int s = 0; s < steps; ++s ) {
+			exact.diffuse();
+			fast.diffuse();
+		}
+		double maxV = 0, maxDiff = 0;
+		for ( int x = 0; x < sizeX; ++x ) {
+			for ( int y = 0; y < sizeY; ++y ) {
+				double e = exact.getValueAt( x, y );
+				maxV = Math.max( maxV, Math.abs( e ) );
+				maxDiff = Math.max( maxDiff, Math.abs( fast.getValueAt( x, y ) - e ) );
+			}
+		}
+		double rel = ( maxV > 0 ) ? maxDiff / maxV : maxDiff;
+		System.out.printf( "testFastKernel %dx%d, %d steps: max diff %.3g, relative %.3g %s\n",
+						   sizeX, sizeY, steps, maxDiff, rel,
+						   rel <= FAST_KERNEL_TOLERANCE ? "ok" : "** TOO BIG **" );
+		return rel;
+	}
+
+	/**
+	 * validate
+	 * run the Model's pheromone schedule (initial pheromone, warmupSteps
+	 * of inject + diffuse, then steps of diffuse + inject) stepping a
+	 * Repast Diffuse2D, and side by side
+	 * - a PheromoneField, one step at a time, halo 1, one thread;
+	 * - a PheromoneField with runWarmup, halo 2 and 3 threads;
+	 * - a ChunkedPheromoneSpace,
+	 * and print (and return) the largest difference from Diffuse2D,
+	 * which should be exactly 0.
+	 */
+	public static double validate ( int sizeX, int sizeY, int warmupSteps, int steps,
+									double diffusionK, double evapRate,
+									double exogRate, double maxPher ) {
+		return compare( sizeX, sizeY, warmupSteps, steps, diffusionK, evapRate,
+						exogRate, maxPher, true )[0];
+	}
+
+	/**
+	 * matchesDiffuse2D
+	 * @return true if validate finds no differences from the Diffuse2D
+	 * we run with, for these parameters, on a small field (40x30, long
+	 * enough for the pheromone to wrap around the edges).  Checked once
+	 * per JVM for each set of parameters (it takes a few ms).
+	 */
+	public static synchronized boolean matchesDiffuse2D ( double diffusionK, double evapRate,
+														  double exogRate, double maxPher ) {
+		String key = diffusionK + " " + evapRate + " " + exogRate + " " + maxPher;
+		Boolean same = matchesChecked.get( key );
+		if ( same == null ) {
+			same = compare( 40, 30, 60, 40, diffusionK, evapRate, exogRate, maxPher, false )[1] == 0;
+			matchesChecked.put( key, same );
+			if ( !same )
+				System.out.printf( "PheromoneField: not the same values as this Diffuse2D, "
+								   + "using Diffuse2D (see PheromoneField.validate).\n" );
+		}
+		return same;
+	}
+
+	protected static Map<String, Boolean> matchesChecked = new HashMap<String, Boolean>();
+
+	// validate; returns the largest difference and the number of cells that differ
+	private static double[] compare ( int sizeX, int sizeY, int warmupSteps, int steps,
+									  double diffusionK, double evapRate,
+									  double exogRate, double maxPher, boolean print ) {
+		int sx = sizeX / 2, sy = sizeY / 2;
+		double amount = maxPher * exogRate;
+		double initPher = Math.min( 2.0 * amount, maxPher );
+		RepastPheromoneSpace stepped = new RepastPheromoneSpace( diffusionK, evapRate, sizeX, sizeY );
+		PheromoneField field = new PheromoneField( diffusionK, evapRate, sizeX, sizeY );
+		PheromoneField warmed = new PheromoneField( diffusionK, evapRate, sizeX, sizeY );
+		warmed.setHalo( 2 );
+		warmed.setNumThreads( 3 );
+		ChunkedPheromoneSpace chunked = new ChunkedPheromoneSpace( diffusionK, evapRate, sizeX, sizeY );
+		PheromoneSpace[] spaces = { stepped, field, warmed, chunked };
+		for ( PheromoneSpace p : spaces ) {
+			p.putValueAt( sx, sy, initPher );
+			p.update();
+		}
+
+		for ( int s = 0; s < warmupSteps; ++s ) {
+			double v = Math.min( amount + stepped.getValueAt( sx, sy ), maxPher );
+			stepped.putValueAt( sx, sy, v );
+			stepped.update();
+			stepped.diffuse();
+			field.inject( sx, sy, amount, maxPher );
+			field.diffuse();
+			chunked.inject( sx, sy, amount, maxPher );
+			chunked.diffuse();
+		}
+		warmed.runWarmup( warmupSteps, sx, sy, amount, maxPher );
+		for ( int s = 0; s < steps; ++s ) {
+			stepped.diffuse();
+			double v = Math.min( amount + stepped.getValueAt( sx, sy ), maxPher );
+			stepped.putValueAt( sx, sy, v );
+			stepped.update();
+			field.diffuse();
+			field.inject( sx, sy, amount, maxPher );
+			warmed.diffuse();
+			warmed.inject( sx, sy, amount, maxPher );
+			chunked.diffuse();
+			chunked.inject( sx, sy, amount, maxPher );
+		}
+		warmed.setNumThreads( 1 );
+
+		String[] names = { "", "PheromoneField", "runWarmup, halo 2, 3 threads", "ChunkedPheromoneSpace" };
+		double worst = 0;
+		int numDiffs = 0;
+		for ( int i = 1; i < spaces.length; ++i ) {
+			double maxDiff = 0;
+			int numDiff = 0;
+			for ( int y = 0; y < sizeY; ++y ) {
+				for ( int x = 0; x < sizeX; ++x ) {
+					double d = Math.abs( spaces[i].getValueAt( x, y ) - stepped.getValueAt( x, y ) );
+					if ( d != 0.0 )
+						++numDiff;
+					maxDiff = Math.max( maxDiff, d );
+				}
+			}
+			if ( print )
+				System.out.printf( "PheromoneField.validate %dx%d, %d+%d steps, %s: %d cells differ, max diff %.3g %s\n",
+								   sizeX, sizeY, warmupSteps, steps, names[i], numDiff, maxDiff,
+								   numDiff == 0 ? "ok" : "** DIFFERENT **" );
+			worst = Math.max( worst, maxDiff );
+			numDiffs += numDiff;
+		}
+		return new double[] { worst, numDiffs };
+	}
+
+	/**
+	 * main
+	 * run validate and testFastKernel:
+	 *   java AntPheromones.PheromoneField [sizeX sizeY warmupSteps steps]
+	 * with the Model's default diffusion and evaporation rates.
+	 */
+	public static void main ( String[] args ) {
+		int sizeX = args.length > 0 ? Integer.parseInt( args[0] ) : 100;
+		int sizeY = args.length > 1 ? Integer.parseInt( args[1] ) : 80;
+		int warmupSteps = args.length > 2 ? Integer.parseInt( args[2] ) : 100;
+		int steps = args.length > 3 ? Integer.parseInt( args[3] ) : 100;
+		validate( sizeX, sizeY, warmupSteps, steps, 0.90, 1.00, 0.30, 32000 );
+		testFastKernel( sizeX, sizeY, steps, 0.90, 1.00 );
+	}
+
+}
@@ -0,0 +1,74 @@
+package  AntPheromones;
+
+/**
+* PheromoneSpace interface.
+*
+* What the Model and Ant classes need from the space the pheromone
+* lives in, so we can swap in different implementations:
+* * RepastPheromoneSpace  -- the Repast Diffuse2D
+* * ChunkedPheromoneSpace -- tiles allocated only where there is pheromone
+* * PheromoneField        -- flat double[]s, buffer swap, threads, halo
+* * CompactPheromoneField -- a PheromoneField stored as float or 16 bit fixed point
+* * SharedPheromoneSpace  -- read only, steps of a trajectory shared by runs
+*                            (see SharedPheromoneTrajectory)
+*
+* Same semantics as Diffuse2D: there is a read copy and a write copy,
+* getValueAt reads the read copy, putValueAt writes the write copy,
+* update() moves the write copy into the read copy, and diffuse()
+* computes the whole write copy from the read copy, then does an update().
+*/
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public interface PheromoneSpace {
+
+	public int getSizeX();
+	public int getSizeY();
+
+	public double getValueAt( int x, int y );
+
+	/**
+	 * getHalo
+	 * @return how far outside the world (0..size-1) getValueAt() can be
+	 * asked, for a cell wrapped around the torus (0: not at all).
+	 */
+	public int getHalo();
+	public void putValueAt( int x, int y, double v );
+
+	public void diffuse();
+	public void update();
+
+	/**
+	 * inject
+	 * add amount to the value at x,y, but not over max, and make it
+	 * readable at once -- the same as
+	 *    putValueAt( x, y, Math.min( amount + getValueAt( x, y ), max ) ); update();
+	 * but without a pass over the whole space in update().
+	 */
+	public void inject( int x, int y, double amount, double max );
+
+	public void setDiffusionConstant( double k );
+	public void setEvaporationRate( double e );
+
+	/**
+	 * getTotalValue
+	 * @return the sum of the (read copy) values of all cells.
+	 */
+	public double getTotalValue();
+
+	/**
+	 * recountTotalValue
+	 * sum all the (read copy) values again.  For spaces that keep a running
+	 * total (so getTotalValue() is O(1)), this also resets that total,
+	 * e.g., to keep rounding errors from adding up.
+	 * @return the sum.
+	 */
+	public double recountTotalValue();
+
+	/**
+	 * getDisplaySpace
+	 * @return a Repast Discrete2DSpace view of the values for Value2DDisplay.
+	 */
+	public Discrete2DSpace getDisplaySpace();
+
+}
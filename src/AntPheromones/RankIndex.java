@@ -0,0 +1,76 @@
+package  AntPheromones;
+
+/**
+RankIndex
+
+A set of the indexes 0..n-1 (all of them in it, to start with) from
+which indexes can be removed, and which can find the r-th smallest
+index still in it, both in O(log n).  Model.activateAntsToTakeSteps
+uses it to pick uniformly from the ants still alive, in their order,
+while the dead ones stay in the AntPopulation until the end of the step.
+
+It is a Fenwick (binary indexed) tree of counts: tree[k], for k from
+1 to n, is how many of the indexes k - lowbit(k) .. k-1 are in the set,
+where lowbit(k) is the lowest bit of k that is set ( k & -k ).
+*/
+
+public class RankIndex {
+
+	protected int		n;
+	protected int		count;		// how many indexes are in the set
+	protected int[]		tree;		// 1..n
+	protected boolean[]	removed;
+	protected int		topBit;		// highest power of 2 <= n
+
+	public RankIndex ( int n ) {
+		reset( n );
+	}
+
+	/**
+	 * reset
+	 * make the set all of 0..n-1 again (reusing the arrays if big enough).
+	 */
+	public void reset ( int n ) {
+		this.n = n;
+		count = n;
+		if ( tree == null || tree.length < n + 1 ) {
+			tree = new int[ n + 1 ];
+			removed = new boolean[ n ];
+		}
+		else
+			java.util.Arrays.fill( removed, 0, n, false );
+		for ( int k = 1; k <= n; ++k )
+			tree[k] = k & -k;		// all in
+		topBit = ( n == 0 ) ? 0 : Integer.highestOneBit( n );
+	}
+
+	public int getCount () { return count; }
+
+	public boolean contains ( int i ) { return !removed[i]; }
+
+	public void remove ( int i ) {
+		if ( removed[i] )
+			return;
+		removed[i] = true;
+		--count;
+		for ( int k = i + 1; k <= n; k += k & -k )
+			--tree[k];
+	}
+
+	/**
+	 * select
+	 * @return the index in the set with r smaller ones in it, 0 <= r < getCount().
+	 */
+	public int select ( int r ) {
+		int pos = 0;		// the most indexes 0..pos-1 with at most r of them in
+		for ( int b = topBit; b > 0; b >>= 1 ) {
+			int next = pos + b;
+			if ( next <= n && tree[next] <= r ) {
+				pos = next;
+				r -= tree[next];
+			}
+		}
+		return pos;
+	}
+
+}
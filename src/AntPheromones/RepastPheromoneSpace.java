@@ -0,0 +1,103 @@
+package  AntPheromones;
+
+/**
+RepastPheromoneSpace
+
+The Repast Diffuse2D, as a PheromoneSpace.
+This is what the model has always used (see Model.usesPheromoneField).
+
+The total is kept as we go, so getTotalValue() is O(1):
+* diffuse() multiplies it by evapRate: the kernel's weights add up to 1
+  (( 4*4 + 4 ) / 20), and on the torus every cell's value is spread
+  to the cells around it, so diffusion itself doesn't change the total;
+* update() adds the change in each cell put since the last update().
+Unlike the totals PheromoneField and the others keep, which add up the
+new values, this one is only the same as summing the field up to
+rounding, which adds up over the steps; recountTotalValue() (see
+Model.pherRecountFrequency) sums the field again and starts over.
+*/
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uchicago.src.sim.space.Diffuse2D;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class RepastPheromoneSpace extends Diffuse2D implements PheromoneSpace {
+
+	protected double	evaporation;				// as Diffuse2D's, for the total
+	protected double	total = 0;					// of the read copy, as above
+	protected Map<Integer, Double> put;			// since update(), by y*xSize+x (made when needed)
+
+	public RepastPheromoneSpace ( double diffusionK, double evapRate, int sizeX, int sizeY ) {
+		super( diffusionK, evapRate, sizeX, sizeY );
+		evaporation = evapRate;
+	}
+
+	public int getHalo () { return 0; }
+
+	public void setEvaporationRate ( double e ) {
+		super.setEvaporationRate( e );
+		evaporation = e;
+	}
+
+	public void putValueAt ( int x, int y, double v ) {
+		super.putValueAt( x, y, v );
+		if ( put == null )
+			put = new HashMap<Integer, Double>();
+		put.put( y * xSize + x, v );
+	}
+
+	public void update () {
+		if ( put != null && !put.isEmpty() ) {
+			for ( Map.Entry<Integer, Double> e : put.entrySet() ) {
+				int i = e.getKey();
+				total += e.getValue() - getValueAt( i % xSize, i / xSize );
+			}
+			put.clear();
+		}
+		super.update();
+	}
+
+	public void diffuse () {
+		if ( put != null )
+			put.clear();		// lost, as with Diffuse2D
+		super.diffuse();
+		total *= evaporation;
+	}
+
+	// Diffuse2D can only do it through the write copy, so update() copies all of
+	// it: two passes over the field per step, where the other pSpaces make one
+	// (PheromoneField is the default when it gives the same values, see Model)
+	public void inject ( int x, int y, double amount, double max ) {
+		double v = amount + getValueAt( x, y );
+		v = Math.min( v, max );
+		putValueAt( x, y, v );
+		update();
+	}
+
+	public double getTotalValue () {
+		return total;
+	}
+
+	// e.g., for values put in from another field, to go on with its total
+	public void setTotalValue ( double t ) {
+		total = t;
+	}
+
+	public double recountTotalValue () {
+		double sum = 0;
+		for ( int x = 0; x < xSize; ++x ) {
+			for ( int y = 0; y < ySize; ++y ) {
+				sum += getValueAt( x, y );
+			}
+		}
+		total = sum;
+		return total;
+	}
+
+	public Discrete2DSpace getDisplaySpace () {
+		return this;
+	}
+
+}
@@ -0,0 +1,188 @@
+package  AntPheromones;
+
+/**
+SharedPheromoneSpace
+
+One run's view of a SharedPheromoneTrajectory, used as the Model's
+pSpace when sharedPheromone is on.  It holds the Snapshot for the
+current step and reads the values from it:
+* diffuse() moves on to the next step's snapshot (the values after
+  diffusing, which is what the ants see during the step),
+* inject() then makes the source cell read the value after the
+  exogenous pheromone is injected (what the Model does at the end
+  of the step), and getTotalValue() the total after injecting.
+The values are shared, so putValueAt() is not allowed, and the diffusion constant and
+evaporation rate can't be changed during the run.
+
+If the trajectory is closed and has no more steps, diffuse() goes on
+with a field of its own: the producer's field, if no other run has
+taken it, else a new one from Model.createPSpace() with the values
+of the last step put in (as WarmupCache.load does), and from then on
+everything is passed on to that.  The values go on the same as without
+sharing.
+*/
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class SharedPheromoneSpace implements PheromoneSpace {
+
+	protected SharedPheromoneTrajectory trajectory;
+	protected SharedPheromoneTrajectory.Snapshot snapshot;
+	protected Model		model;				// to make our own field
+	protected PheromoneSpace own;			// past the end of the trajectory, else null
+	protected int		xSize, ySize;
+	protected int		sourceX, sourceY;
+	protected boolean	injected = true;		// step 0 (after the warmup) has no injection
+
+	protected ValueDisplayAdapter displaySpace;		// made only if asked for
+
+	protected SharedPheromoneSpace ( SharedPheromoneTrajectory t,
+									 SharedPheromoneTrajectory.Snapshot start, Model aModel ) {
+		trajectory = t;
+		snapshot = start;
+		model = aModel;
+		xSize = t.getSizeX();
+		ySize = t.getSizeY();
+		sourceX = t.getSourceX();
+		sourceY = t.getSourceY();
+	}
+
+	public int getSizeX () { return xSize; }
+	public int getSizeY () { return ySize; }
+	public int getTick () { return snapshot.tick; }		// (the last shared one, once on our own)
+	public int getLastTick () { return trajectory.getLastTick(); }
+	public int getHalo () { return 0; }
+
+	/**
+	 * isShared
+	 * @return true while the values come from the trajectory (false
+	 * once we are past its end, with our own field).
+	 */
+	public boolean isShared () { return own == null; }
+
+	public double getValueAt ( int x, int y ) {
+		if ( own != null )
+			return own.getValueAt( x, y );
+		if ( injected && x == sourceX && y == sourceY )
+			return snapshot.sourceValue;
+		return snapshot.values[ y * xSize + x ];
+	}
+
+	public void putValueAt ( int x, int y, double v ) {
+		if ( own != null ) {
+			own.putValueAt( x, y, v );
+			return;
+		}
+		System.err.printf( "\n** SharedPheromoneSpace: can't put %.3f at %d,%d, the values are shared.\n",
+						   v, x, y );
+	}
+
+	public void update () {
+		if ( own != null )
+			own.update();
+	}
+
+	/**
+	 * diffuse
+	 * move on to the next step (computing it, if no other run has yet),
+	 * or diffuse our own field past the end of a closed trajectory.
+	 */
+	public void diffuse () {
+		if ( own == null ) {
+			SharedPheromoneTrajectory.Snapshot next = trajectory.next( this );
+			if ( next != null ) {
+				snapshot = next;
+				injected = false;
+				return;
+			}
+			takeOwnField();
+		}
+		own.diffuse();
+	}
+
+	// the field at the (injected) last step of the trajectory, for us alone
+	private void takeOwnField () {
+		PheromoneSpace f = trajectory.takeField();
+		if ( f == null ) {
+			f = model.createPSpace();
+			for ( int y = 0; y < ySize; ++y ) {
+				for ( int x = 0; x < xSize; ++x ) {
+					double v = getValueAt( x, y );
+					if ( v != f.getValueAt( x, y ) )
+						f.putValueAt( x, y, v );
+				}
+				f.update();	// a row at a time, so PheromoneField's dirty list stays short
+			}
+			if ( f instanceof RepastPheromoneSpace )	// keeps its total as it goes
+				( (RepastPheromoneSpace) f ).setTotalValue( snapshot.total );
+		}
+		own = f;
+		trajectory.release( this );
+	}
+
+	/**
+	 * inject
+	 * the exogenous pheromone for this step goes in (the producer
+	 * already worked out how much, so only the source is allowed).
+	 */
+	public void inject ( int x, int y, double amount, double max ) {
+		if ( own != null ) {
+			own.inject( x, y, amount, max );
+			return;
+		}
+		if ( x != sourceX || y != sourceY )
+			System.err.printf( "\n** SharedPheromoneSpace: can't inject at %d,%d, only at the source.\n",
+							   x, y );
+		injected = true;
+	}
+
+	/**
+	 * release
+	 * tell the trajectory this run is done with it (or stop our own
+	 * field's threads).
+	 */
+	public void release () {
+		if ( own == null )
+			trajectory.release( this );
+		else if ( own instanceof PheromoneField )
+			( (PheromoneField) own ).setNumThreads( 1 );   // stop its threads
+	}
+
+	public void setDiffusionConstant ( double k ) {
+		System.err.printf( "\n** SharedPheromoneSpace: can't change diffusionK of a shared pSpace.\n" );
+	}
+
+	public void setEvaporationRate ( double e ) {
+		System.err.printf( "\n** SharedPheromoneSpace: can't change evapRate of a shared pSpace.\n" );
+	}
+
+	/**
+	 * getTotalValue
+	 * after inject(), the total the producer computed; else sums
+	 * by columns (x outer), as the other PheromoneSpaces do.
+	 */
+	public double getTotalValue () {
+		if ( own != null )
+			return own.getTotalValue();
+		if ( injected )
+			return snapshot.total;
+		double total = 0;
+		for ( int x = 0; x < xSize; ++x )
+			for ( int y = 0; y < ySize; ++y )
+				total += snapshot.values[ y * xSize + x ];
+		return total;
+	}
+
+	public double recountTotalValue () {
+		if ( own != null )
+			return own.recountTotalValue();
+		return getTotalValue();
+	}
+
+	public Discrete2DSpace getDisplaySpace () {
+		if ( displaySpace == null )
+			displaySpace = new ValueDisplayAdapter( this );
+		return displaySpace;
+	}
+
+}
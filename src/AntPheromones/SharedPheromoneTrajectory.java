@@ -0,0 +1,252 @@
+package  AntPheromones;
+
+/**
+SharedPheromoneTrajectory
+
+The ants never put pheromone into the pSpace, so the pheromone field
+at every step depends only on the parameters (the same ones as the
+warmup, see Model.getWarmupCacheKey), not on the seed or the ants.
+So runs done one after another in one JVM (replicates with other
+seeds, or a sweep over the ant parameters) can share one computation
+of it: the first run diffuses and injects into the producer field
+as usual, and keeps a copy of the values at each step as a Snapshot;
+later runs read the snapshots through their own SharedPheromoneSpace,
+so they only pay for their ants.
+
+For step t a Snapshot has
+* values      -- the field after the step's diffuse() (what the ants see),
+* sourceValue -- the source cell after the exogenous pheromone is injected,
+* total       -- getTotalValue() of the field after the injection,
+all computed by the same kind of PheromoneSpace, with the same
+operations, as the Model does itself, so the results are identical.
+Step 0 is the field after the warmup.
+
+A trajectory always has every step from 0 up to its lastTick.
+Each snapshot is a copy of the whole field (8 bytes per cell), so
+before adding one that would take the snapshots of all the trajectories
+over maxBytes, the trajectories no run is reading are dropped, least
+recently used first; if that isn't enough, the trajectory is closed:
+it keeps the steps it has, and makes no more.  A run that gets to the
+end of a closed trajectory goes on with a field of its own (see
+SharedPheromoneSpace.diffuse), from the last snapshot.
+So the copying costs the run that makes the steps one copy of the field
+per step, and the runs after it save the diffusion for all those steps.
+(To keep the step 0 values from one JVM to the next, use the
+warmupCacheDir instead.)
+
+This is for runs one after another, not at the same time: the Ant and
+Food classes keep the model, world and pSpace in static fields, and the
+Repast Random is static too, so two Models can't step at the same
+time in one JVM.  (The methods are synchronized all the same.)
+*/
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SharedPheromoneTrajectory {
+
+	public static long maxBytes = Runtime.getRuntime().maxMemory() / 4;
+
+	// in access order, so the least recently used come first
+	protected static Map<String, SharedPheromoneTrajectory> trajectories =
+		new LinkedHashMap<String, SharedPheromoneTrajectory>( 16, 0.75f, true );
+	protected static long totalBytes = 0;		// of all the snapshots kept
+
+	/**
+	 * Snapshot
+	 * the pheromone at one step; never changed once made.
+	 */
+	public static class Snapshot {
+		public final int		tick;
+		public final double[]	values;		// after diffuse(), index y * sizeX + x
+		public final double		sourceValue;	// at the source, after injecting
+		public final double		total;		// after injecting
+
+		public Snapshot ( int tick, double[] values, double sourceValue, double total ) {
+			this.tick = tick;
+			this.values = values;
+			this.sourceValue = sourceValue;
+			this.total = total;
+		}
+	}
+
+	protected final String		key;
+	protected PheromoneSpace	field;			// the producer's field, at lastTick (or null once taken)
+	protected final int			sourceX, sourceY, sizeX, sizeY;
+	protected final double		injection, maxValue;
+
+	protected List<Snapshot>	snapshots = new ArrayList<Snapshot>();  // steps 0..lastTick
+	protected boolean			closed = false;		// no more steps will be made
+	protected int				numReaders = 0;
+
+	/**
+	 * newReader
+	 * @return a new SharedPheromoneSpace, at step 0 of the trajectory for
+	 * key, or null if there is none.  The reader makes its own fields with
+	 * model (when it gets to the end of a closed trajectory).
+	 */
+	public static synchronized SharedPheromoneSpace newReader ( String key, Model model ) {
+		SharedPheromoneTrajectory t = trajectories.get( key );
+		if ( t == null )
+			return null;
+		return t.newReader( model );
+	}
+
+	/**
+	 * start
+	 * start a trajectory for key from field, which must be warmed up
+	 * (step 0) and is then owned by the trajectory.
+	 * Each step injects injection at sourceX,sourceY (up to maxValue), as
+	 * Model.injectExogenousPheromoneAndUpdate does.
+	 * @return a new reader, at its step 0, or null if even step 0
+	 * doesn't fit in maxBytes (then field is still the caller's).
+	 */
+	public static synchronized SharedPheromoneSpace start ( String key, PheromoneSpace field,
+						int sourceX, int sourceY, double injection, double maxValue, Model model ) {
+		SharedPheromoneTrajectory old = trajectories.remove( key );
+		if ( old != null )
+			old.forget();
+		SharedPheromoneTrajectory t =
+			new SharedPheromoneTrajectory( key, field, sourceX, sourceY, injection, maxValue );
+		if ( !makeRoom( t.getSnapshotBytes() ) )
+			return null;
+		t.addSnapshot( t.copyValues(), field.getValueAt( sourceX, sourceY ), field.getTotalValue() );
+		trajectories.put( key, t );
+		return t.newReader( model );
+	}
+
+	/**
+	 * clear
+	 * forget all the trajectories (readers already open keep working).
+	 */
+	public static synchronized void clear () {
+		for ( SharedPheromoneTrajectory t : trajectories.values() )
+			t.forget();
+		trajectories.clear();
+	}
+
+	public static synchronized long getTotalBytes () { return totalBytes; }
+
+	/**
+	 * makeRoom
+	 * drop the trajectories no run is reading, least recently used first,
+	 * until bytes more fit in maxBytes.
+	 * @return true if they fit.
+	 */
+	protected static synchronized boolean makeRoom ( long bytes ) {
+		Iterator<SharedPheromoneTrajectory> it = trajectories.values().iterator();
+		while ( totalBytes + bytes > maxBytes && it.hasNext() ) {
+			SharedPheromoneTrajectory t = it.next();
+			if ( t.numReaders == 0 ) {
+				it.remove();
+				t.forget();
+			}
+		}
+		return totalBytes + bytes <= maxBytes;
+	}
+
+	protected SharedPheromoneTrajectory ( String key, PheromoneSpace field, int sourceX, int sourceY,
+								double injection, double maxValue ) {
+		this.key = key;
+		this.field = field;
+		this.sourceX = sourceX;
+		this.sourceY = sourceY;
+		this.sizeX = field.getSizeX();
+		this.sizeY = field.getSizeY();
+		this.injection = injection;
+		this.maxValue = maxValue;
+	}
+
+	public int getSizeX () { return sizeX; }
+	public int getSizeY () { return sizeY; }
+	public int getSourceX () { return sourceX; }
+	public int getSourceY () { return sourceY; }
+
+	public synchronized int getLastTick () { return snapshots.size() - 1; }
+	public synchronized boolean isClosed () { return closed; }
+
+	protected long getSnapshotBytes () { return 8L * sizeX * sizeY; }
+
+	protected synchronized SharedPheromoneSpace newReader ( Model model ) {
+		++numReaders;
+		return new SharedPheromoneSpace( this, snapshots.get( 0 ), model );
+	}
+
+	/**
+	 * next
+	 * @return the snapshot for the step after reader's, making it if need be,
+	 * or null if the trajectory is closed and doesn't have it.
+	 */
+	protected Snapshot next ( SharedPheromoneSpace reader ) {
+		synchronized ( SharedPheromoneTrajectory.class ) {	// for makeRoom
+			synchronized ( this ) {
+				int tick = reader.getTick() + 1;
+				if ( tick == snapshots.size() && !closed ) {
+					if ( makeRoom( getSnapshotBytes() ) )
+						produce();
+					else
+						closed = true;
+				}
+				return ( tick < snapshots.size() ) ? snapshots.get( tick ) : null;
+			}
+		}
+	}
+
+	/**
+	 * takeField
+	 * @return the producer's field (at the last step, and no longer used by the
+	 * trajectory), for the first reader to get to the end of the closed trajectory;
+	 * null if one already has it.
+	 */
+	protected synchronized PheromoneSpace takeField () {
+		PheromoneSpace f = field;
+		field = null;
+		return f;
+	}
+
+	protected synchronized void release ( SharedPheromoneSpace reader ) {
+		--numReaders;
+	}
+
+	// one step: diffuse, save the values, inject
+	private void produce () {
+		field.diffuse();
+		double[] values = copyValues();
+		field.inject( sourceX, sourceY, injection, maxValue );
+		addSnapshot( values, field.getValueAt( sourceX, sourceY ), field.getTotalValue() );
+	}
+
+	private synchronized void addSnapshot ( double[] values, double sourceValue, double total ) {
+		snapshots.add( new Snapshot( snapshots.size(), values, sourceValue, total ) );
+		synchronized ( SharedPheromoneTrajectory.class ) {
+			totalBytes += getSnapshotBytes();
+		}
+	}
+
+	// out of the map: its snapshots no longer count (the readers keep theirs)
+	private synchronized void forget () {
+		synchronized ( SharedPheromoneTrajectory.class ) {
+			totalBytes -= snapshots.size() * getSnapshotBytes();
+		}
+		closed = true;
+		PheromoneSpace f = takeField();
+		if ( f instanceof PheromoneField )
+			( (PheromoneField) f ).setNumThreads( 1 );   // stop its threads
+	}
+
+	private double[] copyValues () {
+		double[] values = new double[ sizeX * sizeY ];
+		if ( field instanceof PheromoneField ) {
+			( (PheromoneField) field ).copyValues( values );
+			return values;
+		}
+		for ( int y = 0; y < sizeY; ++y )
+			for ( int x = 0; x < sizeX; ++x )
+				values[ y * sizeX + x ] = field.getValueAt( x, y );
+		return values;
+	}
+
+}
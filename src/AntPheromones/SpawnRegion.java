@@ -0,0 +1,170 @@
+package  AntPheromones;
+
+/**
+SpawnRegion
+
+A set of cells in a world where new ants can be born, made up of
+one or more rectangles (e.g., the edges of the world), with an
+index of which of those cells are empty.  The region listens to the
+world (OccupancyListener), so the index is kept up to date as ants
+move, are born and die, and picking a random empty cell in the region
+is O(1), failing only if every cell in the region is occupied.
+
+Each rectangle's cells get a block of "slots" in a FreeCellIndex.
+A cell in more than one rectangle (e.g., a corner shared by two edges)
+belongs to the first rectangle that has it; its slots in the
+later rectangles are marked occupied forever.
+*/
+
+import java.util.ArrayList;
+
+public class SpawnRegion implements OccupancyListener {
+
+	protected TorusSpace	world;
+	protected int			numRects = 0;
+	protected int[]			x0, y0, x1, y1;		// inclusive corners of each rectangle
+	protected int[]			firstSlot;			// first slot of each rectangle
+	protected FreeCellIndex freeSlots;
+
+	/**
+	 * make an (empty) region in world w.
+	 * add rectangles with addRectangle(), then call attach().
+	 */
+	public SpawnRegion ( TorusSpace w ) {
+		world = w;
+		x0 = new int[4];  y0 = new int[4];
+		x1 = new int[4];  y1 = new int[4];
+		firstSlot = new int[5];
+	}
+
+	/**
+	 * addRectangle
+	 * add cells ax..bx, ay..by (inclusive, clipped to the world) to the region.
+	 */
+	public void addRectangle ( int ax, int ay, int bx, int by ) {
+		if ( freeSlots != null ) {
+			System.err.printf( "\n** SpawnRegion: can't add rectangles after attach()!\n" );
+			return;
+		}
+		ax = Math.max( ax, 0 );  bx = Math.min( bx, world.getSizeX() - 1 );
+		ay = Math.max( ay, 0 );  by = Math.min( by, world.getSizeY() - 1 );
+		if ( ax > bx || ay > by )
+			return;  // nothing in the world
+		if ( numRects == x0.length ) {
+			x0 = java.util.Arrays.copyOf( x0, 2 * numRects );
+			y0 = java.util.Arrays.copyOf( y0, 2 * numRects );
+			x1 = java.util.Arrays.copyOf( x1, 2 * numRects );
+			y1 = java.util.Arrays.copyOf( y1, 2 * numRects );
+			firstSlot = java.util.Arrays.copyOf( firstSlot, 2 * numRects + 1 );
+		}
+		x0[numRects] = ax;  y0[numRects] = ay;
+		x1[numRects] = bx;  y1[numRects] = by;
+		firstSlot[numRects+1] = firstSlot[numRects] + (bx - ax + 1) * (by - ay + 1);
+		++numRects;
+	}
+
+	/**
+	 * attach
+	 * build the index from what is in the world now,
+	 * and start listening to the world for changes.
+	 */
+	public void attach () {
+		freeSlots = new FreeCellIndex( firstSlot[numRects] );
+		for ( int r = 0; r < numRects; ++r ) {
+			for ( int y = y0[r]; y <= y1[r]; ++y ) {
+				for ( int x = x0[r]; x <= x1[r]; ++x ) {
+					if ( ownerOf( x, y ) != r || !world.isOpen( x, y ) )
+						freeSlots.markOccupied( slotIn( r, x, y ) );
+				}
+			}
+		}
+		world.addOccupancyListener( this );
+	}
+
+	/**
+	 * detach
+	 * stop listening to the world (call before throwing the region away).
+	 */
+	public void detach () {
+		world.removeOccupancyListener( this );
+	}
+
+	public int getNumCells () {
+		return firstSlot[numRects];
+	}
+
+	public int getNumFreeCells () {
+		return freeSlots.getNumFree();
+	}
+
+	/**
+	 * placeAtRandomFreeCell
+	 * put obj in a uniformly chosen empty cell of the region,
+	 * and tell it its x,y.
+	 * @return false if there are no empty cells in the region.
+	 */
+	public boolean placeAtRandomFreeCell ( ObjectInGrid obj ) {
+		int slot = freeSlots.getRandomFreeCell();
+		if ( slot < 0 )
+			return false;
+
+		int r = 0;
+		while ( slot >= firstSlot[r+1] )
+			++r;
+		int w = x1[r] - x0[r] + 1;
+		int x = x0[r] + ( slot - firstSlot[r] ) % w;
+		int y = y0[r] + ( slot - firstSlot[r] ) / w;
+		world.putObjectAt( x, y, obj );  // we hear about it via cellOccupied
+		obj.setX( x );
+		obj.setY( y );
+		return true;
+	}
+
+	public void cellOccupied ( int x, int y ) {
+		int r = ownerOf( x, y );
+		if ( r >= 0 )
+			freeSlots.markOccupied( slotIn( r, x, y ) );
+	}
+
+	public void cellEmptied ( int x, int y ) {
+		int r = ownerOf( x, y );
+		if ( r >= 0 )
+			freeSlots.markFree( slotIn( r, x, y ) );
+	}
+
+	// first rectangle with x,y in it, or -1 if not in the region
+	private int ownerOf ( int x, int y ) {
+		for ( int r = 0; r < numRects; ++r ) {
+			if ( x >= x0[r] && x <= x1[r] && y >= y0[r] && y <= y1[r] )
+				return r;
+		}
+		return -1;
+	}
+
+	private int slotIn ( int r, int x, int y ) {
+		return firstSlot[r] + ( y - y0[r] ) * ( x1[r] - x0[r] + 1 ) + ( x - x0[r] );
+	}
+
+	/**
+	 * parseRectangles
+	 * add rectangles from a string like "x0:y0:x1:y1/x0:y0:x1:y1"
+	 * (we can't use , or ; since the parameter parser splits on those).
+	 * @return number of rectangles found
+	 */
+	public int parseRectangles ( String spec ) {
+		ArrayList<int[]> rects = new ArrayList<int[]>();
+		for ( String r : spec.split( "/" ) ) {
+			String[] t = r.trim().split( ":" );
+			if ( t.length != 4 ) {
+				System.err.printf( "\n** SpawnRegion: bad rectangle '%s' (want x0:y0:x1:y1)\n", r );
+				continue;
+			}
+			rects.add( new int[] { Integer.parseInt( t[0].trim() ), Integer.parseInt( t[1].trim() ),
+								   Integer.parseInt( t[2].trim() ), Integer.parseInt( t[3].trim() ) } );
+		}
+		for ( int[] r : rects )
+			addRectangle( r[0], r[1], r[2], r[3] );
+		return rects.size();
+	}
+
+}
@@ -0,0 +1,286 @@
+package  AntPheromones;
+
+/**
+SpectralPheromoneField
+
+Computes the pheromone field the Model makes (one source, at
+sourceX,sourceY, injected into and clamped at maxValue; diffusion
+and evaporation everywhere) without stepping the whole field.
+
+Diffusion on the torus is linear and the same everywhere, so each
+cosine wave across the world is just multiplied by a factor each step:
+for the wave with kx cycles across x and ky across y, with
+cx = cos(2 pi kx / sizeX), cy = cos(2 pi ky / sizeY),
+   lambda = evap * ( (1-K) + K * ( 4*(2cx + 2cy) + 4 cx cy ) / 20 )
+(the Diffuse2D kernel, see PheromoneField).  Everything is symmetric
+around the source, so we keep just the amplitudes of the waves with
+kx <= sizeX/2, ky <= sizeY/2 (those with kx and sizeX-kx are the same):
+* diffuse() multiplies each amplitude by its lambda,
+* inject() adds the same amount to every amplitude (a spike at the source).
+The source value (which inject() needs for the clamp at maxValue) is
+the weighted sum of the amplitudes, and diffuse() computes it in the
+same pass, so a step costs a few flops per amplitude, for about a
+quarter as many amplitudes as cells, and touches no field at all.
+The clamp is done exactly as the Model does it, every step.
+getValues() then turns the amplitudes back into the field
+(a cosine transform, separately in x and y).
+
+The values are the same as stepping Diffuse2D up to rounding
+(see validate(); the largest differences stay below TOLERANCE of
+maxValue; run it with  java AntPheromones.SpectralPheromoneField ),
+except that cells that would still be exactly 0 come out as tiny
+rounding noise (set to 0 if it is negative).  So every cell gets a
+value, which is why the Model doesn't use it for chunked worlds.
+*/
+
+public class SpectralPheromoneField {
+
+	public static final double TOLERANCE = 1e-9;	// max difference / maxValue in validate()
+
+	protected int		xSize, ySize;
+	protected int		sourceX, sourceY;
+	protected double	injection, maxValue;
+	protected int		numKX, numKY;		// amplitudes kept, sizeX/2+1 by sizeY/2+1
+	protected double[]	amp;				// index kx * numKY + ky
+	protected double[]	lambda;				// factor per step, same index
+	protected double[]	weight;				// each amplitude's share of the source value
+	protected double[]	cosX, cosY;			// cos(2 pi k d / size), index k * num + d
+	protected double	pending = 0;		// injected but not yet added to amp
+	protected double	sourceValue = 0;	// of amp (without pending)
+	protected int		numClamped = 0;		// injections cut back to maxValue
+
+	public SpectralPheromoneField ( double k, double e, int sizeX, int sizeY,
+									int sourceX, int sourceY,
+									double injection, double maxValue ) {
+		xSize = sizeX;
+		ySize = sizeY;
+		this.sourceX = sourceX;
+		this.sourceY = sourceY;
+		this.injection = injection;
+		this.maxValue = maxValue;
+		numKX = xSize / 2 + 1;
+		numKY = ySize / 2 + 1;
+		cosX = cosTable( xSize, numKX );
+		cosY = cosTable( ySize, numKY );
+		amp = new double[ numKX * numKY ];
+		lambda = new double[ numKX * numKY ];
+		weight = new double[ numKX * numKY ];
+		for ( int kx = 0; kx < numKX; ++kx ) {
+			double cx = Math.cos( 2 * Math.PI * kx / xSize );
+			for ( int ky = 0; ky < numKY; ++ky ) {
+				double cy = Math.cos( 2 * Math.PI * ky / ySize );
+				lambda[ kx * numKY + ky ] =
+					e * ( ( 1 - k ) + k * ( 4 * ( 2 * cx + 2 * cy ) + 4 * cx * cy ) / 20.0 );
+				weight[ kx * numKY + ky ] = (double) multiplicity( kx, xSize ) *
+					multiplicity( ky, ySize ) / ( (double) xSize * ySize );
+			}
+		}
+	}
+
+	public int getSizeX () { return xSize; }
+	public int getSizeY () { return ySize; }
+	public int getNumClamped () { return numClamped; }
+
+	/**
+	 * getSourceValue
+	 * @return the value now at the source cell.
+	 */
+	public double getSourceValue () { return sourceValue + pending; }
+
+	/**
+	 * putSourceValue
+	 * set the source cell to v (as the Model puts the initial pheromone).
+	 */
+	public void putSourceValue ( double v ) {
+		pending += v - getSourceValue();
+	}
+
+	/**
+	 * inject
+	 * add injection to the source, but not over maxValue
+	 * (as Model.injectExogenousPheromoneAndUpdate does).
+	 */
+	public void inject () {
+		double r = getSourceValue();
+		double v = injection + r;
+		if ( v > maxValue ) {
+			v = maxValue;
+			++numClamped;
+		}
+		pending += v - r;
+	}
+
+	/**
+	 * diffuse
+	 * one step of diffusion (and evaporation).
+	 */
+	public void diffuse () {
+		double p = pending, s = 0;
+		for ( int i = 0; i < amp.length; ++i ) {
+			double a = lambda[i] * ( amp[i] + p );
+			amp[i] = a;
+			s += weight[i] * a;
+		}
+		pending = 0;
+		sourceValue = s;
+	}
+
+	/**
+	 * runWarmup
+	 * the Model's warmup: steps times inject, then diffuse.
+	 */
+	public void runWarmup ( int steps ) {
+		for ( int i = 0; i < steps; ++i ) {
+			inject();
+			diffuse();
+		}
+	}
+
+	/**
+	 * runSteps
+	 * the pheromone part of steps Model steps: diffuse, then inject.
+	 */
+	public void runSteps ( int steps ) {
+		for ( int i = 0; i < steps; ++i ) {
+			diffuse();
+			inject();
+		}
+	}
+
+	/**
+	 * getValues
+	 * @return the field now, row by row (index y * sizeX + x).
+	 */
+	public double[] getValues () {
+		// first over ky, for each kx and each distance dy from the source
+		double[] byKX = new double[ numKX * numKY ];	// index kx * numKY + dy
+		for ( int kx = 0; kx < numKX; ++kx ) {
+			for ( int dy = 0; dy < numKY; ++dy ) {
+				double s = 0;
+				for ( int ky = 0; ky < numKY; ++ky ) {
+					int i = kx * numKY + ky;
+					s += weight[i] * ( amp[i] + pending ) * cosY[ ky * numKY + dy ];
+				}
+				byKX[ kx * numKY + dy ] = s;
+			}
+		}
+		// then over kx, for each distance dx
+		double[] byDist = new double[ numKX * numKY ];	// index dx * numKY + dy
+		for ( int dx = 0; dx < numKX; ++dx ) {
+			for ( int dy = 0; dy < numKY; ++dy ) {
+				double s = 0;
+				for ( int kx = 0; kx < numKX; ++kx )
+					s += cosX[ kx * numKX + dx ] * byKX[ kx * numKY + dy ];
+				byDist[ dx * numKY + dy ] = Math.max( s, 0.0 );
+			}
+		}
+		double[] values = new double[ xSize * ySize ];
+		for ( int y = 0; y < ySize; ++y ) {
+			int dy = distance( y, sourceY, ySize );
+			for ( int x = 0; x < xSize; ++x )
+				values[ y * xSize + x ] = byDist[ distance( x, sourceX, xSize ) * numKY + dy ];
+		}
+		return values;
+	}
+
+	/**
+	 * copyInto
+	 * put the field into pSpace (only the cells that differ) and update() it.
+	 */
+	public void copyInto ( PheromoneSpace pSpace ) {
+		double[] values = getValues();
+		for ( int y = 0; y < ySize; ++y ) {
+			for ( int x = 0; x < xSize; ++x ) {
+				double v = values[ y * xSize + x ];
+				if ( v != pSpace.getValueAt( x, y ) )
+					pSpace.putValueAt( x, y, v );
+			}
+			pSpace.update();	// a row at a time, as WarmupCache.load does
+		}
+	}
+
+	// cos( 2 pi k d / size ) for k, d in 0..num-1, index k * num + d
+	private static double[] cosTable ( int size, int num ) {
+		double[] t = new double[ num * num ];
+		for ( int k = 0; k < num; ++k )
+			for ( int d = 0; d < num; ++d )
+				t[ k * num + d ] = Math.cos( 2 * Math.PI * ( (long) k * d % size ) / size );
+		return t;
+	}
+
+	// how many of the waves 0..size-1 amplitude k stands for (k and size-k)
+	private static int multiplicity ( int k, int size ) {
+		return ( k == 0 || 2 * k == size ) ? 1 : 2;
+	}
+
+	// distance from a to b around a torus of the given size
+	private static int distance ( int a, int b, int size ) {
+		int d = Math.abs( a - b );
+		return Math.min( d, size - d );
+	}
+
+	/**
+	 * validate
+	 * run the Model's pheromone schedule (initial pheromone, warmupSteps
+	 * of inject + diffuse, then steps of diffuse + inject) both stepping
+	 * a Repast Diffuse2D and here, and print (and return) the largest
+	 * difference / maxPher, which should be below TOLERANCE.
+	 * Also prints how many injections hit the maxPher clamp.
+	 */
+	public static double validate ( int sizeX, int sizeY, int warmupSteps, int steps,
+									double diffusionK, double evapRate,
+									double exogRate, double maxPher ) {
+		int sx = sizeX / 2, sy = sizeY / 2;
+		double initPher = Math.min( 2.0 * maxPher * exogRate, maxPher );
+		RepastPheromoneSpace stepped = new RepastPheromoneSpace( diffusionK, evapRate, sizeX, sizeY );
+		SpectralPheromoneField spectral = new SpectralPheromoneField( diffusionK, evapRate,
+										sizeX, sizeY, sx, sy, maxPher * exogRate, maxPher );
+		stepped.putValueAt( sx, sy, initPher );
+		stepped.update();
+		spectral.putSourceValue( initPher );
+		for ( int s = 0; s < warmupSteps + steps; ++s ) {
+			if ( s < warmupSteps ) {
+				injectStepped( stepped, sx, sy, maxPher * exogRate, maxPher );
+				stepped.diffuse();
+			}
+			else {
+				stepped.diffuse();
+				injectStepped( stepped, sx, sy, maxPher * exogRate, maxPher );
+			}
+		}
+		spectral.runWarmup( warmupSteps );
+		spectral.runSteps( steps );
+		double[] values = spectral.getValues();
+		double maxDiff = 0;
+		for ( int y = 0; y < sizeY; ++y )
+			for ( int x = 0; x < sizeX; ++x )
+				maxDiff = Math.max( maxDiff, Math.abs( values[ y * sizeX + x ] - stepped.getValueAt( x, y ) ) );
+		double rel = maxDiff / maxPher;
+		System.out.printf( "SpectralPheromoneField.validate %dx%d, %d+%d steps, %d clamped: max diff %.3g, of maxPher %.3g %s\n",
+						   sizeX, sizeY, warmupSteps, steps, spectral.getNumClamped(), maxDiff, rel,
+						   rel <= TOLERANCE ? "ok" : "** TOO BIG **" );
+		return rel;
+	}
+
+	/**
+	 * main
+	 * run validate:
+	 *   java AntPheromones.SpectralPheromoneField [sizeX sizeY warmupSteps steps]
+	 * with the Model's default parameters.
+	 */
+	public static void main ( String[] args ) {
+		int sizeX = args.length > 0 ? Integer.parseInt( args[0] ) : 64;
+		int sizeY = args.length > 1 ? Integer.parseInt( args[1] ) : 64;
+		int warmupSteps = args.length > 2 ? Integer.parseInt( args[2] ) : 100;
+		int steps = args.length > 3 ? Integer.parseInt( args[3] ) : 100;
+		validate( sizeX, sizeY, warmupSteps, steps, 0.90, 1.00, 0.30, 32000 );
+	}
+
+	private static void injectStepped ( PheromoneSpace p, int sx, int sy, double injection, double maxPher ) {
+		double v = injection + p.getValueAt( sx, sy );
+		v = Math.min( v, maxPher );
+		p.putValueAt( sx, sy, v );
+		p.update();
+	}
+
+}
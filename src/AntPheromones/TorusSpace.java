@@ -0,0 +1,65 @@
+package  AntPheromones;
+
+/**
+* TorusSpace interface.
+*
+* What the Model, Ant and Food classes need from the world they live in,
+* so we can swap in different world implementations:
+* * TorusWorld   -- built over the Repast Object2DGrid
+* * IntTorusWorld -- a flat int[] grid of occupant ids (for big worlds)
+*
+* All implementations hold ObjectInGrid objects, at most one per cell,
+* and wrap x,y values around the edges (see xnorm/ynorm).
+*/
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public interface TorusSpace {
+
+	public int getSizeX();
+	public int getSizeY();
+
+	public Object getObjectAt( int x, int y );
+	public boolean isOpen( int x, int y );		// x,y must be in the world
+	public void putObjectAt( int x, int y, Object obj );
+
+	public boolean placeAtRandomLocation( ObjectInGrid obj );
+	public boolean moveObject( ObjectInGrid obj, int dX, int dY );
+	public boolean moveObjectTo( ObjectInGrid obj, int newX, int newY );
+	public ArrayList<Point> getOpenNeighborLocations( int x, int y );
+
+	/**
+	 * getOpenNeighborMask
+	 * @return bit k set if neighbor k of x,y is empty, where neighbor k is at
+	 * MooreNeighborhood.MASK_DX[k], MASK_DY[k] (so x,y itself is not included).
+	 * Same cells, in the same order, as getOpenNeighborLocations but no garbage.
+	 */
+	public int getOpenNeighborMask( int x, int y );
+
+	/**
+	 * getNumberOfNeighbors
+	 * @return number of objects within distance d of x,y (Moore neighborhood),
+	 * not counting whatever is at x,y itself.
+	 */
+	public int getNumberOfNeighbors( int x, int y, int d );
+
+	/**
+	 * addOccupancyListener
+	 * listener is told each time a cell goes from empty to occupied or back.
+	 */
+	public void addOccupancyListener( OccupancyListener listener );
+	public void removeOccupancyListener( OccupancyListener listener );
+
+	public int xnorm( int x );
+	public int ynorm( int y );
+
+	/**
+	 * getDisplaySpace
+	 * @return a Repast Discrete2DSpace view of the world for Object2DDisplay.
+	 */
+	public Discrete2DSpace getDisplaySpace();
+
+}
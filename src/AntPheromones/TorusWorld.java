@@ -12,8 +12,11 @@ values for raw x,y values.
 
 import java.awt.Point;
 import java.util.ArrayList;
+import java.util.Vector;
 
-public class TorusWorld extends GridWorld {
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class TorusWorld extends GridWorld implements TorusSpace {
 
 	public TorusWorld ( int sizeX, int sizeY, Model aModel ) {
 		super( sizeX, sizeY, aModel );
@@ -63,40 +66,84 @@ public class TorusWorld extends GridWorld {
 
 	public ArrayList<Point> getOpenNeighborLocations ( int x, int y ) {
 		ArrayList<Point> ptList = new ArrayList<Point>();
-		
-		// figure out the range of cells to search
-		int minX = x - 1;
-		int maxX = x + 1;
-		int minY = y - 1;
-		int maxY = y + 1;
+		// precomputed offsets, by rows (y outer, x inner)
+		MooreNeighborhood nbhd = MooreNeighborhood.get( xSize, ySize, 1, false );
+		boolean interior = nbhd.isInterior( x, y );  // no need to normalize for torus
 
 		// search area for open cells
-		for ( int ty = minY; ty <= maxY; ++ty ) {
-			for ( int tx = minX; tx <= maxX; ++tx ) {
-				int txnorm = xnorm( tx );				// normalize for torus
-				int tynorm = ynorm( ty );
-				if ( getObjectAt( txnorm, tynorm ) == null ) { // its open
-					Point p = new Point( txnorm, tynorm );
-					ptList.add( p );
-				}
+		for ( int k = 0; k < nbhd.size; ++k ) {
+			int txnorm = interior ? x + nbhd.dx[k] : nbhd.wrapX( x, k );
+			int tynorm = interior ? y + nbhd.dy[k] : nbhd.wrapY( y, k );
+			if ( getObjectAt( txnorm, tynorm ) == null ) { // its open
+				Point p = new Point( txnorm, tynorm );
+				ptList.add( p );
 			}
 		}
 
 		return ptList;
 	}
 
+	/**
+	 * getOpenNeighborMask
+	 * @param x
+	 * @param y
+	 * @return bitmask of the open cells around x,y (see TorusSpace).
+	 */
+	public int getOpenNeighborMask ( int x, int y ) {
+		int mask = 0;
+		boolean interior = x > 0 && y > 0 && x < xSize - 1 && y < ySize - 1;
+		for ( int k = 0; k < 8; ++k ) {
+			int tx = x + MooreNeighborhood.MASK_DX[k];
+			int ty = y + MooreNeighborhood.MASK_DY[k];
+			if ( !interior ) {
+				tx = xnorm( tx );
+				ty = ynorm( ty );
+			}
+			if ( getObjectAt( tx, ty ) == null )
+				mask |= 1 << k;
+		}
+		return mask;
+	}
+
+	/**
+	 * isOpen
+	 * @return true if there is nothing in (in world) cell x,y
+	 */
+	public boolean isOpen ( int x, int y ) {
+		return getObjectAt( x, y ) == null;
+	}
+
+	/**
+	 * getNumberOfNeighbors
+	 * @param x
+	 * @param y
+	 * @param d
+	 * @return number of objects within d of x,y, via Repast getMooreNeighbors.
+	 * NB: Object2DGrid does not wrap, so cells near the edges have fewer neighbors.
+	 */
+	@SuppressWarnings("unchecked")
+	public int getNumberOfNeighbors ( int x, int y, int d ) {
+		Vector<Object> nbors = (Vector<Object>) getMooreNeighbors( x, y, d, d, false );
+		return nbors.size();
+	}
+
+	/**
+	 * getDisplaySpace
+	 * we are an Object2DGrid already, so the display can use us directly.
+	 */
+	public Discrete2DSpace getDisplaySpace () {
+		return this;
+	}
+
 	/**
 	 * xnorm
 	 * return torus-normalized values for raw x value.
+	 * (no loops or branches for x within one world-width of the world.)
 	 * @param x
 	 * @return int 
 	 */
 	public int xnorm ( int x ) { 
-		if ( x > xSize -1 || x < 0 ) {
-			while ( x < 0 ) x += xSize;
-			return x % xSize; 
-		}
-		return x;
+		return MooreNeighborhood.wrap( x, xSize );
 	}
 	/**
 	 * ynorm
@@ -105,11 +152,7 @@ public class TorusWorld extends GridWorld {
 	 * @return int 
 	 */
 	public int ynorm ( int y ) { 
-		if ( y > ySize -1 || y < 0 ) {
-			while ( y < 0 ) y += ySize;
-			return y % ySize; 
-		}
-		return y;
+		return MooreNeighborhood.wrap( y, ySize );
 	}
 }
 
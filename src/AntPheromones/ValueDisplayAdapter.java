@@ -0,0 +1,51 @@
+package  AntPheromones;
+
+/**
+ValueDisplayAdapter
+
+Lets the Repast Value2DDisplay (and probes) look at a PheromoneSpace
+that is not itself a Repast space, e.g., a ChunkedPheromoneSpace.
+All value lookups are passed on to the real space, and it has no
+cells of its own, so it costs nothing per cell.
+
+getMatrix() returns null: there is no Repast matrix behind the space.
+*/
+
+import java.awt.Dimension;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+public class ValueDisplayAdapter implements Discrete2DSpace {
+
+	protected PheromoneSpace space;
+
+	public ValueDisplayAdapter ( PheromoneSpace s ) {
+		space = s;
+	}
+
+	public int getSizeX () { return space.getSizeX(); }
+	public int getSizeY () { return space.getSizeY(); }
+	public Dimension getSize () { return new Dimension( getSizeX(), getSizeY() ); }
+
+	public double getValueAt ( int x, int y ) {
+		return space.getValueAt( x, y );
+	}
+
+	public void putValueAt ( int x, int y, double v ) {
+		space.putValueAt( x, y, v );
+	}
+
+	// for probes: the value, as a Double
+	public Object getObjectAt ( int x, int y ) {
+		return Double.valueOf( space.getValueAt( x, y ) );
+	}
+
+	public void putObjectAt ( int x, int y, Object obj ) {
+		if ( obj instanceof Number )
+			space.putValueAt( x, y, ( (Number) obj ).doubleValue() );
+	}
+
+	public BaseMatrix getMatrix () { return null; }
+
+}
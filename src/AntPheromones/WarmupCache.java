@@ -0,0 +1,145 @@
+package  AntPheromones;
+
+/**
+WarmupCache
+
+Saves the pheromone field, as it is after the initialSteps warmup, to a
+file, and loads it back on later runs with the same parameters, so
+replicate runs (which differ only in seed) don't all redo the warmup.
+
+The warmup depends only on the world size, the pheromone parameters
+and the kind of pheromone space (see Model.getWarmupCacheKey), not
+on the seed, since there are no ants yet.  The file is named by a hash
+of that key, and the key itself is stored in the file and checked on
+load, so different parameters never get each other's fields.
+
+File format (memory-mapped, big-endian):
+   int MAGIC, int key length, key (UTF-8 bytes), int sizeX, int sizeY,
+   then sizeX * sizeY doubles, row by row (y outer).
+Files are written to a temporary name and then renamed, so a run
+reading the cache never sees a half written file.
+NB: a mapped file can be at most 2 GB, so fields bigger than that
+(more than about 268 million cells) are not cached.
+*/
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+public class WarmupCache {
+
+	public static final int MAGIC = 0x50484557;		// "PHEW"
+
+	/**
+	 * getFile
+	 * @return the cache file for key in directory dir.
+	 */
+	public static File getFile ( String dir, String key ) {
+		return new File( dir, "warmup-" + hash( key ) + ".bin" );
+	}
+
+	/**
+	 * load
+	 * if there is a cache file for key in dir, put its values into pSpace
+	 * (and update() it) and return true; else return false.
+	 */
+	public static boolean load ( PheromoneSpace pSpace, String dir, String key ) {
+		File file = getFile( dir, key );
+		if ( !file.exists() )
+			return false;
+		try {
+			RandomAccessFile raf = new RandomAccessFile( file, "r" );
+			try {
+				FileChannel ch = raf.getChannel();
+				MappedByteBuffer buf = ch.map( FileChannel.MapMode.READ_ONLY, 0, ch.size() );
+				if ( buf.getInt() != MAGIC )
+					return false;
+				byte[] k = new byte[ buf.getInt() ];
+				buf.get( k );
+				int sizeX = buf.getInt(), sizeY = buf.getInt();
+				if ( !key.equals( new String( k, "UTF-8" ) ) ||
+					 sizeX != pSpace.getSizeX() || sizeY != pSpace.getSizeY() ||
+					 buf.remaining() != 8L * sizeX * sizeY ) {
+					System.err.printf( "\n** WarmupCache: %s is not for this run, ignoring it.\n", file );
+					return false;
+				}
+				for ( int y = 0; y < sizeY; ++y ) {
+					for ( int x = 0; x < sizeX; ++x ) {
+						double v = buf.getDouble();
+						if ( v != pSpace.getValueAt( x, y ) )
+							pSpace.putValueAt( x, y, v );
+					}
+					pSpace.update();	// a row at a time, so PheromoneField's dirty list stays short
+				}
+				return true;
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch ( Exception e ) {
+			System.err.printf( "\n** WarmupCache: can't read %s: %s\n", file, e );
+			return false;
+		}
+	}
+
+	/**
+	 * save
+	 * write the values of pSpace to the cache file for key in dir.
+	 */
+	public static void save ( PheromoneSpace pSpace, String dir, String key ) {
+		File file = getFile( dir, key );
+		File tmp = new File( dir, file.getName() + "." + System.nanoTime() + ".tmp" );
+		int sizeX = pSpace.getSizeX(), sizeY = pSpace.getSizeY();
+		try {
+			new File( dir ).mkdirs();
+			byte[] k = key.getBytes( "UTF-8" );
+			long size = 4 + 4 + k.length + 4 + 4 + 8L * sizeX * sizeY;
+			if ( size > Integer.MAX_VALUE ) {
+				System.err.printf( "\n** WarmupCache: field too big to cache.\n" );
+				return;
+			}
+			RandomAccessFile raf = new RandomAccessFile( tmp, "rw" );
+			try {
+				FileChannel ch = raf.getChannel();
+				MappedByteBuffer buf = ch.map( FileChannel.MapMode.READ_WRITE, 0, size );
+				buf.putInt( MAGIC );
+				buf.putInt( k.length );
+				buf.put( k );
+				buf.putInt( sizeX );
+				buf.putInt( sizeY );
+				for ( int y = 0; y < sizeY; ++y )
+					for ( int x = 0; x < sizeX; ++x )
+						buf.putDouble( pSpace.getValueAt( x, y ) );
+				buf.force();
+			}
+			finally {
+				raf.close();
+			}
+			if ( !tmp.renameTo( file ) ) {	// someone else saved it first?
+				tmp.delete();
+			}
+		}
+		catch ( Exception e ) {
+			System.err.printf( "\n** WarmupCache: can't write %s: %s\n", file, e );
+			tmp.delete();
+		}
+	}
+
+	// hex SHA-1 of s (first 16 digits)
+	private static String hash ( String s ) {
+		try {
+			byte[] d = MessageDigest.getInstance( "SHA-1" ).digest( s.getBytes( "UTF-8" ) );
+			StringBuilder sb = new StringBuilder();
+			for ( int i = 0; i < 8; ++i )
+				sb.append( String.format( "%02x", d[i] ) );
+			return sb.toString();
+		}
+		catch ( Exception e ) {
+			return Integer.toHexString( s.hashCode() );
+		}
+	}
+
+}